@@ -3,16 +3,13 @@ package com.veeva.vault.custom.actions.record.Agenda;
 import com.veeva.vault.custom.udc.AgendaApp;
 import com.veeva.vault.custom.udc.ErrorType;
 import com.veeva.vault.custom.udc.QueryUtil;
-import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.custom.udc.UnitOfWork;
 import com.veeva.vault.sdk.api.action.RecordAction;
 import com.veeva.vault.sdk.api.action.RecordActionContext;
 import com.veeva.vault.sdk.api.action.RecordActionInfo;
 import com.veeva.vault.sdk.api.action.Usage;
 import com.veeva.vault.sdk.api.core.*;
 import com.veeva.vault.sdk.api.data.Record;
-import com.veeva.vault.sdk.api.data.RecordService;
-import com.veeva.vault.sdk.api.document.DocumentService;
-import com.veeva.vault.sdk.api.document.DocumentVersion;
 import com.veeva.vault.sdk.api.job.JobParameters;
 import com.veeva.vault.sdk.api.job.JobService;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
@@ -35,8 +32,6 @@ public class AgendaItemMove implements RecordAction {
 
     public void execute(RecordActionContext recordActionContext) {
 
-      RecordService recordService = ServiceLocator.locate(RecordService.class);
-
       Record thisRecord = recordActionContext.getRecords().get(0);
       Record inputRecord = recordActionContext.getUserInputRecord();
 
@@ -49,6 +44,9 @@ public class AgendaItemMove implements RecordAction {
 
       BigDecimal docId = thisRecord.getValue("document_unbound__c", ValueType.NUMBER);
 
+      // The writes below are collected, and written together by commit() ...
+      UnitOfWork unitOfWork = UnitOfWork.begin();
+
       /////////////////////////////////////////////////////////////
       // Update the Document's agenda__c field ...
       /////////////////////////////////////////////////////////////
@@ -56,15 +54,14 @@ public class AgendaItemMove implements RecordAction {
         QueryExecutionResult result = QueryUtil.queryOne(
           "select agenda__c, version_id from documents where id = " + docId
         );
-        List<String> agendaIds = result.getValue("agenda__c", ValueType.REFERENCES);
+        List<String> currentAgendaIds = result.getValue("agenda__c", ValueType.REFERENCES);
         String docVersionId = result.getValue("version_id", ValueType.STRING);
 
+        List<String> agendaIds = VaultCollections.newList();
+        agendaIds.addAll(currentAgendaIds);
         agendaIds.set(agendaIds.indexOf(oldAgendaId), newAgendaId);
 
-        DocumentService documentService = ServiceLocator.locate(DocumentService.class);
-        DocumentVersion documentVersion = documentService.newVersionWithId(docVersionId);
-        documentVersion.setValue("agenda__c", agendaIds);
-        documentService.saveDocumentVersions(VaultCollections.asList(documentVersion));
+        unitOfWork.updateDocument(docVersionId, "agenda__c", currentAgendaIds, agendaIds);
       }
 
       // This suppresses AFTER trigger processing for the Agenda Item object, so that we
@@ -75,13 +72,12 @@ public class AgendaItemMove implements RecordAction {
       /////////////////////////////////////////////////////////////
       // Add the item to the other agenda ...
       /////////////////////////////////////////////////////////////
-      Record recordToSave = recordService.newRecord("agenda_item__c");
+      Record recordToSave = unitOfWork.insert("agenda_item__c");
       recordToSave.setValue("agenda__c", newAgendaId);
       recordToSave.setValue("document_unbound__c", docId);
       recordToSave.setValue("topic__c", thisRecord.getValue("topic__c", ValueType.STRING));
       recordToSave.setValue("duration__c", thisRecord.getValue("duration__c", ValueType.NUMBER));
       recordToSave.setValue("project_owner__c", thisRecord.getValue("project_owner__c", ValueType.STRING));
-      Util.saveRecord(recordToSave);
 
       String recordId;
 
@@ -89,13 +85,15 @@ public class AgendaItemMove implements RecordAction {
       // Remove the item from its current agenda ...
       /////////////////////////////////////////////////////////////
       recordId = thisRecord.getValue("id", ValueType.STRING);
-      Util.deleteRecord(recordService.newRecordWithId("agenda_item__c", recordId));
+      unitOfWork.delete("agenda_item__c", recordId);
 
       /////////////////////////////////////////////////////////////
       // And delete the input record -- it's no longer needed ...
       /////////////////////////////////////////////////////////////
       recordId = inputRecord.getValue("id", ValueType.STRING);
-      Util.deleteRecord(recordService.newRecordWithId("agenda_item_move__c", recordId));
+      unitOfWork.delete("agenda_item_move__c", recordId);
+
+      unitOfWork.commit();
 
       ////////////////////////////////////////////////////////////////////////////
       // recalculate start/end times for the Agenda Items in the old Agenda ...
@@ -1,6 +1,7 @@
 package com.veeva.vault.custom.actions.record.SubmissionManifest;
 
 import com.veeva.vault.custom.udc.ErrorType;
+import com.veeva.vault.custom.udc.QueryUtil;
 import com.veeva.vault.custom.udc.Result;
 import com.veeva.vault.custom.udc.SubmissionManifest;
 import com.veeva.vault.sdk.api.action.RecordAction;
@@ -30,6 +31,9 @@ public class SubmissionManifestOnSubmit implements RecordAction {
         Record record = recordActionContext.getRecords().get(0);
         String manifestId = record.getValue("id", ValueType.STRING);
 
+        // the readiness check and the document update read the same materials and documents
+        QueryUtil.enableRequestCache();
+
         Result result = SubmissionManifest.OnSubmit(manifestId);
 
         if (result.success == false) {
@@ -1,6 +1,7 @@
 package com.veeva.vault.custom.jobs;
 
 import com.veeva.vault.custom.udc.AgendaApp;
+import com.veeva.vault.custom.udc.HttpMetrics;
 import com.veeva.vault.custom.udc.Logger;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.job.*;
@@ -29,9 +30,12 @@ public class AgendaDeactivation implements Job {
 
       Logger logger = new Logger(jobProcessContext.getJobLogger());
 
+      HttpMetrics.enable();
+
       logger.info("Starting deactivation...");
       AgendaApp.deactivatePastAgendas(logger);
       logger.info("...deactivation complete");
+      HttpMetrics.dump(logger);
 
       JobTask task = jobProcessContext.getCurrentTask();
       TaskOutput taskOutput = task.getTaskOutput();
@@ -3,6 +3,7 @@ package com.veeva.vault.custom.jobs;
 import com.veeva.vault.custom.udc.AgendaApp;
 import com.veeva.vault.custom.udc.AgendaItemsList;
 import com.veeva.vault.custom.udc.QueryUtil;
+import com.veeva.vault.custom.udc.VqlTemplate;
 import com.veeva.vault.sdk.api.core.RequestContext;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
@@ -26,7 +27,9 @@ import java.util.List;
       String agendaMeetingTime = jobInitContext.getJobParameter(AgendaApp.AGENDA_MEETNG_TIME, JobParamValueType.STRING);
 
       String agendaName = QueryUtil.queryOne(
-        "select name__v from agenda__c where id = '"+agendaId+"'"
+        VqlTemplate.get("select name__v from agenda__c where id = :agendaId")
+          .setString("agendaId", agendaId)
+          .render()
       ).getValue("name__v", ValueType.STRING);
 
       logger.log("Processing agenda: \"" + agendaName + "\" ("+agendaId+")");
@@ -1,8 +1,13 @@
 package com.veeva.vault.custom.jobs;
 
+import com.veeva.vault.custom.udc.BulkActionResult;
+import com.veeva.vault.custom.udc.HttpCallout;
+import com.veeva.vault.custom.udc.HttpMetrics;
+import com.veeva.vault.custom.udc.Logger;
 import com.veeva.vault.custom.udc.QueryUtil;
 import com.veeva.vault.custom.udc.Util;
 import com.veeva.vault.custom.udc.VaultAPI;
+import com.veeva.vault.custom.udc.VqlTemplate;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.job.*;
@@ -10,10 +15,18 @@ import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /*
  *  This Job will move all Material documents in a completed Compliance Package to the "Approved for Distribution"
  *  status (or the "Awaiting Health Authority Response" status, if applicable).
+ *
+ *  init() resolves each user action label to its name once per lifecycle, and passes the name to the tasks
+ *  in the job items.  The materials of a task are grouped by lifecycle and user action, and each group is
+ *  moved with the bulk document user action API (see VaultAPI.initiateBulkDocumentUserAction).  That API runs
+ *  the action in a Vault job, so a task only knows that the documents were submitted; the job's completion
+ *  checks the status of those Vault jobs, reports the materials of unfinished jobs as pending, and reports
+ *  the other materials still in the original state as not moved.
  */
   
   @JobInfo(adminConfigurable = true)
@@ -22,6 +35,9 @@ import java.util.List;
     private static final String UserActionAFD = "approved_for_distribution__c";
     private static final String UserActionAwait = "awaiting_response_from_health_authority__c";
 
+    // the materials processed are all in this state (see init()), so each action label has one name per lifecycle
+    private static final String MaterialState = "submit_to_health_authority__c";
+
     public JobInputSupplier init(JobInitContext jobInitContext) {
 
       JobLogger logger = jobInitContext.getJobLogger();
@@ -31,19 +47,29 @@ import java.util.List;
 
       List<JobItem> jobItems = VaultCollections.newList();
 
-      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+      String query = VqlTemplate.get(
         "select document__sysr.version_id," +
+        "       toName(document__sysr.lifecycle__v)," +
         "       toName(document__sysr.submission_type__c)" +
         "  from binder_node__sys" +
-        " where binder__sysr.id = " + binderId +
+        " where binder__sysr.id = :binderId" +
         "   and type__sys = 'document__sys'" +
         "   and toName(document__sysr.type__v) = 'material__c'" +
-        "   and toName(document__sysr.status__v) = 'submit_to_health_authority__c'"
-      ).streamResults().iterator();
+        "   and toName(document__sysr.status__v) = :state" +
+        " order by id asc"
+      ).setNumber("binderId", Long.parseLong(binderId)).setString("state", MaterialState).render();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.queryPaged(query);
+
+      // each action label is resolved to its name once per lifecycle, here, and passed to the tasks in the
+      // job items; "" if it could not be resolved
+      VaultAPI vaultAPI = new VaultAPI("local_connection__c", logger);
+      Map<String, String> actionNames = VaultCollections.newMap();
 
       while (iter.hasNext()) {
         QueryExecutionResult result = iter.next();
         String docVersionId = result.getValue("document__sysr.version_id", ValueType.STRING);
+        String lifecycle = result.getValue("document__sysr.lifecycle__v", ValueType.STRING);
         String submissionType = Util.getSinglePicklistValue(
           result.getValue("document__sysr.submission_type__c", ValueType.PICKLIST_VALUES)
         );
@@ -53,6 +79,8 @@ import java.util.List;
         JobItem jobItem = jobInitContext.newJobItem();
         jobItem.setValue("docVersionId", docVersionId);
         jobItem.setValue("submissionType", submissionType);
+        jobItem.setValue("lifecycle", lifecycle);
+        jobItem.setValue("actionName", resolveActionName(vaultAPI, actionNames, docVersionId, lifecycle, submissionType, logger));
         jobItems.add(jobItem);
       }
 
@@ -61,42 +89,99 @@ import java.util.List;
 
     public void process(JobProcessContext jobProcessContext) {
 
-      JobLogger logger = jobProcessContext.getJobLogger();
-      VaultAPI vaultAPI = new VaultAPI("local_connection__c", logger);
+      // buffered: the task's log lines are written as one block at the end of the task
+      Logger logger = new Logger(jobProcessContext.getJobLogger()).setBuffered(Logger.DEFAULT_BUFFER_CAPACITY, 0);
+      VaultAPI vaultAPI = new VaultAPI("local_connection__c").setLogger(logger);
 
-      List<JobItem> items = jobProcessContext.getCurrentTask().getItems();
+      HttpMetrics.enable();
 
-      int errorCount = 0;
+      try {
 
-      for (JobItem jobItem : items) {
-        String docVersionId = jobItem.getValue("docVersionId", JobValueType.STRING);
-        String submissionType = jobItem.getValue("submissionType", JobValueType.STRING);
-        String actionLabel = submissionType.equals("fda_2253_advisory_comment__c") ?
-          UserActionAwait : UserActionAFD;
-        logger.log("Moving " + docVersionId + " to status " + actionLabel);
-        vaultAPI.initiateDocumentUserActionLabel(docVersionId, actionLabel);
-        if (vaultAPI.failed()) {
-          String errorType = vaultAPI.getErrorType();
-          String errorMsg = vaultAPI.getErrorMessage();
-          logger.log(docVersionId + " failed with " + errorType + ": " + errorMsg);
-          errorCount += 1;
+        List<JobItem> items = jobProcessContext.getCurrentTask().getItems();
+
+        int errorCount = 0;
+        List<String> jobIds = VaultCollections.newList();
+
+        // Group the materials by lifecycle and user action, so that each group is moved with bulk calls...
+        List<String> groupKeys = VaultCollections.newList();
+        Map<String, List<String>> docVersionIdsByGroup = VaultCollections.newMap();
+
+        for (JobItem jobItem : items) {
+          String docVersionId = jobItem.getValue("docVersionId", JobValueType.STRING);
+          String submissionType = jobItem.getValue("submissionType", JobValueType.STRING);
+          String lifecycle = jobItem.getValue("lifecycle", JobValueType.STRING);
+          String actionName = jobItem.getValue("actionName", JobValueType.STRING);
+          String groupKey = lifecycle + "|" + actionLabel(submissionType) + "|" + actionName;
+          List<String> docVersionIds = docVersionIdsByGroup.get(groupKey);
+          if (docVersionIds == null) {
+            docVersionIds = VaultCollections.newList();
+            docVersionIdsByGroup.put(groupKey, docVersionIds);
+            groupKeys.add(groupKey);
+          }
+          docVersionIds.add(docVersionId);
         }
-       }
 
-       JobTask task = jobProcessContext.getCurrentTask();
-       TaskOutput taskOutput = task.getTaskOutput();
+        for (String groupKey : groupKeys) {
+          String[] groupFields = groupKey.split("\\|", -1);
+          String lifecycle = groupFields[0];
+          String actionLabel = groupFields[1];
+          String actionName = groupFields[2];
+          List<String> docVersionIds = docVersionIdsByGroup.get(groupKey);
 
-       if (errorCount > 0) {
-         taskOutput.setState(TaskState.ERRORS_ENCOUNTERED);
-       } else {
-         taskOutput.setState(TaskState.SUCCESS);
-       }
+          logger.info("Moving " + docVersionIds.size() + " materials to status " + actionLabel + ": " +
+            Util.stringifyList(docVersionIds, ", "));
+
+          if (actionName.isEmpty()) {
+            logger.error("Unable to resolve action " + actionLabel + " for lifecycle " + lifecycle + "; see the job log");
+            errorCount += docVersionIds.size();
+            continue;
+          }
+
+          BulkActionResult result = vaultAPI.initiateBulkDocumentUserAction(
+            docVersionIds, lifecycle, MaterialState, actionName
+          );
+          for (String docVersionId : result.getFailedIds()) {
+            logger.error(docVersionId + " failed with " + result.getErrorType(docVersionId) + ": " +
+              result.getErrorMessage(docVersionId));
+          }
+          errorCount += result.getFailedIds().size();
+          logger.info(actionLabel + ": " + result.toString() + ", job(s) " + Util.stringifyList(result.getJobIds(), ", "));
+          jobIds.addAll(result.getJobIds());
+        }
+
+        JobTask task = jobProcessContext.getCurrentTask();
+        TaskOutput taskOutput = task.getTaskOutput();
+
+        // the bulk action jobs, for the completion to report alongside any materials that were not moved
+        taskOutput.setValue("jobIds", Util.stringifyList(jobIds, ", "));
+
+        if (errorCount > 0) {
+          taskOutput.setState(TaskState.ERRORS_ENCOUNTERED);
+        } else {
+          taskOutput.setState(TaskState.SUCCESS);
+        }
+
+        if (HttpCallout.getRequestRetryCount() > 0) {
+          logger.info("Vault API calls retried in this task: " + HttpCallout.getRequestRetryCount());
+        }
+        if (HttpCallout.getBurstLimitRemaining() >= 0) {
+          logger.info("Vault API calls remaining: burst " + HttpCallout.getBurstLimitRemaining() +
+            ", daily " + HttpCallout.getDailyLimitRemaining());
+        }
+        HttpMetrics.dump(logger);
+
+      } finally {
+        // also on failure: the buffered lines are what is needed to diagnose it
+        logger.flush();
+      }
 
     }
 
     public void completeWithSuccess(JobCompletionContext jobCompletionContext) {
        JobLogger logger = jobCompletionContext.getJobLogger();
-       logger.log("All tasks completed successfully");
+       if (reportNotMoved(jobCompletionContext, logger) == 0) {
+         logger.log("All tasks completed successfully");
+       }
     }
 
     public void completeWithError(JobCompletionContext jobCompletionContext) {
@@ -112,6 +197,103 @@ import java.util.List;
               logger.log(task.getTaskId() + " failed with error message " + taskOutput.getValue("firstError", JobValueType.STRING));
            }
        }
+
+       reportNotMoved(jobCompletionContext, logger);
+    }
+
+    // Reconcile the bulk actions submitted by the tasks.  The actions run in Vault jobs that may not have
+    // finished yet, so each task's jobs are checked first: the materials of a task with an unfinished job
+    // (or one whose status cannot be retrieved) are logged as pending.  Of the other materials, those still
+    // in MaterialState are logged as not moved.  Returns the number of materials not moved.
+    private int reportNotMoved(JobCompletionContext jobCompletionContext, JobLogger logger) {
+
+      VaultAPI vaultAPI = new VaultAPI("local_connection__c", logger);
+
+      List<String> docVersionIds = VaultCollections.newList();
+      List<String> finishedJobIds = VaultCollections.newList();
+      int pendingCount = 0;
+
+      for (JobTask task : jobCompletionContext.getTasks()) {
+
+        List<String> pendingJobIds = VaultCollections.newList();
+        List<String> taskJobIds = VaultCollections.newList();
+        String jobIds = task.getTaskOutput().getValue("jobIds", JobValueType.STRING);
+        if (jobIds != null && !jobIds.isEmpty()) {
+          for (String jobId : jobIds.split(", ")) {
+            String status = vaultAPI.getJobStatus(jobId);
+            if (vaultAPI.failed() || VaultAPI.isJobPending(status)) {
+              pendingJobIds.add(jobId + (status == null ? "" : " (" + status + ")"));
+            } else {
+              taskJobIds.add(jobId);
+            }
+          }
+        }
+
+        List<JobItem> items = task.getItems();
+        if (!pendingJobIds.isEmpty()) {
+          logger.log(items.size() + " materials of task " + task.getTaskId() + " are pending: job(s) " +
+            Util.stringifyList(pendingJobIds, ", ") + " have not finished");
+          pendingCount += items.size();
+          continue;
+        }
+
+        for (JobItem jobItem : items) {
+          docVersionIds.add(jobItem.getValue("docVersionId", JobValueType.STRING));
+        }
+        finishedJobIds.addAll(taskJobIds);
+      }
+
+      if (docVersionIds.isEmpty()) {
+        return 0;
+      }
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.queryContains(
+        "select version_id from documents" +
+        " where version_id contains " + QueryUtil.CONTAINS_LIST +
+        "   and toName(status__v) = '" + MaterialState + "'",
+        docVersionIds
+      );
+
+      int notMovedCount = 0;
+      while (iter.hasNext()) {
+        logger.log(iter.next().getValue("version_id", ValueType.STRING) + " was not moved from " + MaterialState);
+        notMovedCount++;
+      }
+
+      if (notMovedCount > 0) {
+        logger.log(notMovedCount + " of " + docVersionIds.size() + " materials were not moved; see job(s) " +
+          Util.stringifyList(finishedJobIds, ", "));
+      }
+      if (pendingCount > 0) {
+        logger.log(pendingCount + " materials are pending; check their status once the jobs have finished");
+      }
+
+      return notMovedCount;
+    }
+
+    private static String actionLabel(String submissionType) {
+      return submissionType.equals("fda_2253_advisory_comment__c") ? UserActionAwait : UserActionAFD;
+    }
+
+    // Return the name of the material's user action, resolving it with the material only the first time the
+    // action label is seen for the lifecycle.  Returns "" if it cannot be resolved.
+    private static String resolveActionName(
+      VaultAPI vaultAPI, Map<String, String> actionNames, String docVersionId, String lifecycle,
+      String submissionType, JobLogger logger
+    ) {
+      String actionLabel = actionLabel(submissionType);
+      String key = lifecycle + "|" + actionLabel;
+      String actionName = actionNames.get(key);
+      if (actionName == null) {
+        actionName = vaultAPI.getDocumentUserActionName(docVersionId, actionLabel);
+        if (vaultAPI.failed()) {
+          logger.log("Unable to resolve action " + actionLabel + " for lifecycle " + lifecycle + ": " +
+            vaultAPI.getErrorType() + ": " + vaultAPI.getErrorMessage());
+          actionName = "";
+        }
+        actionNames.put(key, actionName);
+      }
+      return actionName;
     }
 
     private boolean isValidSubmissionType(String submissionType) {
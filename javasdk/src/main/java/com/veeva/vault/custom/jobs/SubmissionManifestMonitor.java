@@ -1,9 +1,14 @@
 package com.veeva.vault.custom.jobs;
 
+import com.veeva.vault.custom.udc.BulkActionResult;
+import com.veeva.vault.custom.udc.ErrorType;
+import com.veeva.vault.custom.udc.HttpCallout;
+import com.veeva.vault.custom.udc.HttpMetrics;
+import com.veeva.vault.custom.udc.Logger;
 import com.veeva.vault.custom.udc.QueryUtil;
 import com.veeva.vault.custom.udc.Result;
 import com.veeva.vault.custom.udc.SubmissionManifest;
-import com.veeva.vault.custom.udc.VaultAPI;
+import com.veeva.vault.custom.udc.Util;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.job.*;
@@ -52,36 +57,91 @@ public class SubmissionManifestMonitor implements Job {
 
     public void process(JobProcessContext jobProcessContext) {
 
-        JobLogger logger = jobProcessContext.getJobLogger();
+        // buffered: the task's log lines are written as one block at the end of the task
+        Logger logger = new Logger(jobProcessContext.getJobLogger()).setBuffered(Logger.DEFAULT_BUFFER_CAPACITY, 0);
 
-        List<JobItem> jobItems = jobProcessContext.getCurrentTask().getItems();
+        HttpMetrics.enable();
 
-        int errorCount = 0;
+        try {
 
-        for (JobItem jobItem : jobItems) {
-          String recordId = jobItem.getValue("recordId", JobValueType.STRING);
-          String recordStatus = jobItem.getValue("recordStatus", JobValueType.STRING);
-          TaskState taskState = null;
-          if (recordStatus.equals("submission_pending_state__c")) {
-            taskState = processPendingManifest(recordId, jobProcessContext);
-          } else if (recordStatus.equals("submission_requested_state__c")) {
-            taskState = processSubmittedManifest(recordId, jobProcessContext);
-          } else {
-            logger.log("Invalid status: " + recordStatus);  // this should never happen
-            errorCount++;
+          List<JobItem> jobItems = jobProcessContext.getCurrentTask().getItems();
+
+          int errorCount = 0;
+
+          // Check readiness one manifest at a time, then submit or close the ready manifests with bulk calls...
+          List<String> manifestsToSubmit = VaultCollections.newList();
+          List<String> manifestsToClose = VaultCollections.newList();
+
+          for (JobItem jobItem : jobItems) {
+            String recordId = jobItem.getValue("recordId", JobValueType.STRING);
+            String recordStatus = jobItem.getValue("recordStatus", JobValueType.STRING);
+            if (recordStatus.equals("submission_pending_state__c")) {
+              if (isReadyForSubmission(recordId, logger)) {
+                manifestsToSubmit.add(recordId);
+              }
+            } else if (recordStatus.equals("submission_requested_state__c")) {
+              if (isReadyToClose(recordId, logger)) {
+                manifestsToClose.add(recordId);
+              }
+            } else {
+              logger.error("Invalid status: " + recordStatus);  // this should never happen
+              errorCount++;
+            }
           }
-          if (taskState == TaskState.ERRORS_ENCOUNTERED) {
-            errorCount++;
+
+          if (manifestsToSubmit.size() > 0) {
+            logger.info("Attempting to execute workflow \"Submit to Regulatory Operations\" for " +
+              Util.stringifyList(manifestsToSubmit, ", "));
+            BulkActionResult submitResult = SubmissionManifest.SubmitManifests(manifestsToSubmit);
+            for (String recordId : submitResult.getSucceededIds()) {
+              logger.info("Successfully submitted manifest " + recordId);
+            }
+            for (String recordId : submitResult.getFailedIds()) {
+              // not sent because the API limit is low: the manifest stays pending and the next run submits it
+              if (ErrorType.API_LIMIT_EXCEEDED.equals(submitResult.getErrorType(recordId))) {
+                logger.info("Submission Manifest " + recordId + " left for the next run: " +
+                  submitResult.getErrorMessage(recordId));
+                continue;
+              }
+              logger.error(recordId + ": an error occured: " + submitResult.getErrorType(recordId) + ": " +
+                submitResult.getErrorMessage(recordId));
+              errorCount++;
+            }
           }
-        }
 
-        JobTask task = jobProcessContext.getCurrentTask();
-        TaskOutput taskOutput = task.getTaskOutput();
+          // a manifest that fails to close is retried by the next run; this is not an error
+          if (manifestsToClose.size() > 0) {
+            BulkActionResult closeResult = SubmissionManifest.CloseManifests(manifestsToClose);
+            for (String recordId : closeResult.getSucceededIds()) {
+              logger.info("Submission Manifest " + recordId + " closed");
+            }
+            for (String recordId : closeResult.getFailedIds()) {
+              logger.info("Submission Manifest " + recordId + " not closed due to: " +
+                closeResult.getErrorType(recordId) + ": " + closeResult.getErrorMessage(recordId));
+            }
+          }
 
-        if (errorCount == 0) {
-            taskOutput.setState(TaskState.SUCCESS);
-        } else {
-            taskOutput.setState(TaskState.ERRORS_ENCOUNTERED);
+          if (HttpCallout.getRequestRetryCount() > 0) {
+            logger.info("Vault API calls retried in this task: " + HttpCallout.getRequestRetryCount());
+          }
+          if (HttpCallout.getBurstLimitRemaining() >= 0) {
+            logger.info("Vault API calls remaining: burst " + HttpCallout.getBurstLimitRemaining() +
+              ", daily " + HttpCallout.getDailyLimitRemaining());
+          }
+          HttpMetrics.dump(logger);
+
+          JobTask task = jobProcessContext.getCurrentTask();
+          TaskOutput taskOutput = task.getTaskOutput();
+
+          if (errorCount == 0) {
+              taskOutput.setState(TaskState.SUCCESS);
+          } else {
+              taskOutput.setState(TaskState.ERRORS_ENCOUNTERED);
+          }
+
+        } finally {
+          // also on failure: the buffered lines are what is needed to diagnose it
+          logger.flush();
         }
     }
 
@@ -96,68 +156,36 @@ public class SubmissionManifestMonitor implements Job {
         logger.log("completeWithError: " + result.getNumberFailedTasks() + " tasks failed out of " + result.getNumberTasks());
     }
 
-    // Process a Submission Manifest object record in the "Submission Pending" status.
-    // Check if the Submission Manifest is ready for submission to Regulatory Operations.
-    // Move the record to the "Submission Requested" status if it is ready for submission.
-    private TaskState processPendingManifest(String recordId, JobProcessContext jobProcessContext) {
-
-      JobLogger logger = jobProcessContext.getJobLogger();
+    // Check if a Submission Manifest object record in the "Submission Pending" status is ready for submission
+    // to Regulatory Operations.
+    private boolean isReadyForSubmission(String recordId, Logger logger) {
 
-      logger.log("Checking submission readiness for " + recordId);
+      logger.info("Checking submission readiness for " + recordId);
 
       Result result = SubmissionManifest.IsSubmissionReady(recordId);
 
       if (result.success == false) {
-        logger.log(recordId + " is not ready for submission due to: " + result.message);
-        return TaskState.SUCCESS; // this is not an error
-      }
-
-      logger.log("Attempting to execute workflow \"Submit to Regulatory Operations\" for " + recordId);
-
-      VaultAPI vaultAPI = new VaultAPI("local_connection__c");
-
-      String actionName = vaultAPI.getObjectUserActionName(
-        "submission_manifest__c", recordId, "Submit to Regulatory Operations"
-      );
-
-      if (vaultAPI.failed()) {
-        String errorType = vaultAPI.getErrorType();
-        String errorMsg = vaultAPI.getErrorMessage();
-        logger.log(recordId + ": an error occured: " + errorType + ": " + errorMsg);
-        return TaskState.ERRORS_ENCOUNTERED;
-      }
-
-      vaultAPI.initiateObjectRecordUserAction("submission_manifest__c", recordId, actionName);
-
-      if (vaultAPI.failed()) {
-        String errorType = vaultAPI.getErrorType();
-        String errorMsg = vaultAPI.getErrorMessage();
-        logger.log(recordId + ": an error occured: " + errorType + ": " + errorMsg);
-        return TaskState.ERRORS_ENCOUNTERED;
+        logger.info(recordId + " is not ready for submission due to: " + result.message);
+        return false;
       }
 
-      logger.log("Successfully submitted manifest " + recordId);
-
-      return TaskState.SUCCESS;
+      return true;
     }
 
-  // Process a Submission Manifest object record in the "Submission Requested" status.
-  // See SubmissionManifest.CheckAndClose() for processing details.
-    private TaskState processSubmittedManifest(String recordId, JobProcessContext jobProcessContext) {
-
-      JobLogger logger = jobProcessContext.getJobLogger();
+  // Check if a Submission Manifest object record in the "Submission Requested" status can be closed.
+  // See SubmissionManifest.IsReadyToClose() for details.
+    private boolean isReadyToClose(String recordId, Logger logger) {
 
-      logger.log("Checking Submission Manifest " + recordId + " for closure.");
+      logger.info("Checking Submission Manifest " + recordId + " for closure.");
 
-      Result result = SubmissionManifest.CheckAndClose(recordId);
+      Result result = SubmissionManifest.IsReadyToClose(recordId);
 
       if (result.success == false) {
-        logger.log("Submission Manifest " + recordId + " not closed due to: " + result.message);
-      } else {
-        logger.log("Submission Manifest " + recordId + " closed");
+        logger.info("Submission Manifest " + recordId + " not closed due to: " + result.message);
+        return false;
       }
 
-      return TaskState.SUCCESS;
+      return true;
     }
 
 }
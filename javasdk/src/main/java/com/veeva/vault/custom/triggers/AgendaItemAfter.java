@@ -2,6 +2,7 @@ package com.veeva.vault.custom.triggers;
 
 import com.veeva.vault.custom.udc.AgendaApp;
 import com.veeva.vault.custom.udc.AgendaItemsList;
+import com.veeva.vault.custom.udc.QueryUtil;
 import com.veeva.vault.sdk.api.core.RequestContext;
 import com.veeva.vault.sdk.api.core.RequestContextValueType;
 import com.veeva.vault.sdk.api.core.TriggerOrder;
@@ -33,6 +34,9 @@ public class AgendaItemAfter implements RecordTrigger {
         return;  //this is not the initial request in the Context
       }
 
+      // the agenda's meeting time and item list may be read more than once below
+      QueryUtil.enableRequestCache();
+
       List<RecordChange> recordChanges = recordTriggerContext.getRecordChanges();
 
       if (recordChanges.size() > 1) {
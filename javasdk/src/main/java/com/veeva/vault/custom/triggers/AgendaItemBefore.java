@@ -1,9 +1,13 @@
 package com.veeva.vault.custom.triggers;
 
+import com.veeva.vault.custom.udc.DocumentRoleResolver;
+import com.veeva.vault.custom.udc.DocumentRoles;
+import com.veeva.vault.custom.udc.LookupCoalescer;
 import com.veeva.vault.custom.udc.QueryUtil;
-import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.custom.udc.VqlTemplate;
 import com.veeva.vault.sdk.api.core.TriggerOrder;
 import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.data.*;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
@@ -82,13 +86,21 @@ public class AgendaItemBefore implements RecordTrigger {
       int intDocId = docId.intValue();
 
       QueryExecutionResult queryResult = QueryUtil.queryOne(
-        "select document_number__v from documents where id = " + intDocId
+        VqlTemplate.get("select document_number__v from documents where id = :docId")
+          .setNumber("docId", intDocId)
+          .render()
       );
       String documentNumber = queryResult.getValue("document_number__v", ValueType.STRING);
       newRecord.setValue("topic__c", documentNumber);
 
-      String projectOwner = Util.getUserInDocumentRole(intDocId, "project_manager__c");
-      String documentOwner =  Util.getUserInDocumentRole(intDocId, "owner__v");
+      // both roles are resolved with one doc_role__sys query
+      String docKey = LookupCoalescer.numericKey(intDocId);
+      DocumentRoles documentRoles = DocumentRoleResolver.forDocuments(
+        VaultCollections.asList(docKey),
+        VaultCollections.asList("project_manager__c", "owner__v")
+      );
+      String projectOwner = documentRoles.getFirstUser(docKey, "project_manager__c");
+      String documentOwner = documentRoles.getFirstUser(docKey, "owner__v");
       if (projectOwner != null) {
         newRecord.setValue("project_owner__c", projectOwner);
       }
@@ -1,6 +1,8 @@
 package com.veeva.vault.custom.triggers;
 
 import com.veeva.vault.custom.udc.QueryUtil;
+import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.custom.udc.VqlTemplate;
 import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
@@ -35,12 +37,14 @@ public class SubmissionComments implements RecordTrigger {
         String binderId = newRecord.getValue("binder_id__c", ValueType.STRING);
 
         String binderVersionId = QueryUtil.queryOne(
-          "select version_id from documents where id = " + binderId
+          VqlTemplate.get("select version_id from documents where id = :binderId")
+            .setNumber("binderId", Long.parseLong(binderId))
+            .render()
         ).getValue("version_id", ValueType.STRING);
 
         DocumentVersion binderVersion = documentService.newVersionWithId(binderVersionId);
         binderVersion.setValue("2253_comments__c", VaultCollections.asList(recordId));
-        documentService.saveDocumentVersions(VaultCollections.asList(binderVersion));
+        Util.saveDocumentVersions(VaultCollections.asList(binderVersion));
 
       }
     	
@@ -2,10 +2,12 @@ package com.veeva.vault.custom.triggers;
 
 import com.veeva.vault.custom.udc.DocVersionIdParts;
 import com.veeva.vault.custom.udc.ErrorType;
+import com.veeva.vault.custom.udc.LookupCoalescer;
 import com.veeva.vault.custom.udc.QueryUtil;
+import com.veeva.vault.custom.udc.TrackedRecord;
 import com.veeva.vault.custom.udc.Util;
+import com.veeva.vault.custom.udc.VqlTemplate;
 import com.veeva.vault.sdk.api.core.RollbackException;
-import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.data.*;
@@ -35,6 +37,8 @@ public class SubmissionManifestMaterial implements RecordTrigger {
 
     public void execute(RecordTriggerContext recordTriggerContext) {
 
+      requestDocumentLookups(recordTriggerContext);
+
       // Bulk updates are not expected, so the loop logic is safe...
 
       for (RecordChange inputRecord : recordTriggerContext.getRecordChanges()) {
@@ -67,7 +71,7 @@ public class SubmissionManifestMaterial implements RecordTrigger {
          }
 
       }  // end for
-    	
+
     }
 
     // Process the inserted or updated record (AFTER insert or Update)
@@ -79,15 +83,18 @@ public class SubmissionManifestMaterial implements RecordTrigger {
 
       checkDocumentIncludedOnAnotherManifest(recordId, materialId, manifestId); //throws exception
 
-      RecordService recordService = ServiceLocator.locate(RecordService.class);
-      Record updateRecord = recordService.newRecordWithId(record.getObjectName(), recordId);
       String docVersionId = record.getValue("document__c", ValueType.STRING);
       int docId = DocVersionIdParts.id(docVersionId);
 
+      // save only the fields that changed, and skip the save (and the triggers it fires) if neither did
+      TrackedRecord updateRecord = new TrackedRecord(record.getObjectName(), recordId)
+        .snapshot("material_id__c", record.getValue("material_id__c", ValueType.STRING))
+        .snapshot("project_owner__c", record.getValue("project_owner__c", ValueType.STRING));
+
       updateRecord.setValue("material_id__c", materialId);
       updateRecord.setValue("project_owner__c", Util.getUserInDocumentRole(docId, "project_manager__c"));
 
-      Util.saveRecord(updateRecord);
+      updateRecord.save();
 
     }
 
@@ -105,11 +112,13 @@ public class SubmissionManifestMaterial implements RecordTrigger {
 //        "   and id != '"+recordId+"'"
 //      );
 
-      Iterator<QueryExecutionResult> iter = QueryUtil.query(
+      String query = VqlTemplate.get(
         "select submission_manifest__c from submission_manifest_material__c" +
-        " where material_id__c = '"+materialId+"'" +
-        "   and id != '"+recordId+"'"
-      ).streamResults().iterator();
+        " where material_id__c = :materialId" +
+        "   and id != :recordId"
+      ).setString("materialId", materialId).setString("recordId", recordId).render();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(query).streamResults().iterator();
 
       List<String> submissionManifestIDs = VaultCollections.newList();
       while (iter.hasNext()) {
@@ -120,16 +129,22 @@ public class SubmissionManifestMaterial implements RecordTrigger {
       if (submissionManifestIDs.size() > 0) {
 
         String productId = QueryUtil.queryOne(
-          "select product__c from submission_manifest__c where id = '"+thisManifestId+"'"
+          VqlTemplate.get("select product__c from submission_manifest__c where id = :manifestId")
+            .setString("manifestId", thisManifestId)
+            .render()
         ).getValue("product__c", ValueType.STRING);
 
-        long queryCount = QueryUtil.queryCount(
-          "select id from submission_manifest__c" +
-          " where product__c = '"+productId+"'" +
-          "   and id contains " + Util.vqlContains(submissionManifestIDs)
-        );
-
-        if (queryCount > 0) {
+        // the rendered query keeps QueryUtil.CONTAINS_LIST for queryContains() to fill in
+        boolean includedOnManifestWithSameProduct = QueryUtil.queryContains(
+          VqlTemplate.get(
+            "select id from submission_manifest__c" +
+            " where product__c = :productId" +
+            "   and id contains " + QueryUtil.CONTAINS_LIST
+          ).setString("productId", productId).render(),
+          submissionManifestIDs
+        ).exists();
+
+        if (includedOnManifestWithSameProduct) {
           throw new RollbackException(ErrorType.OPERATION_DENIED,
             "This material was already included on this or another Manifest with the same Product."
           );
@@ -144,7 +159,9 @@ public class SubmissionManifestMaterial implements RecordTrigger {
     private void checkManifestNotSubmitted(Record record) {
       String manifestId = record.getValue("submission_manifest__c", ValueType.STRING);
       String lifecycleState = QueryUtil.queryOne(
-        "select state__v from submission_manifest__c where id = '"+manifestId+"'"
+        VqlTemplate.get("select state__v from submission_manifest__c where id = :manifestId")
+          .setString("manifestId", manifestId)
+          .render()
       ).getValue("state__v", ValueType.STRING);
       if (lifecycleState.equals("submission_requested_state__c") ||
           lifecycleState.equals("submission_pending_state__c")) {
@@ -156,9 +173,39 @@ public class SubmissionManifestMaterial implements RecordTrigger {
 
     // Material ID is the document number plus the material version, e.g. "ELZ-00002-v2"
     private String getMaterialId(String documentVersionId) {
-      return QueryUtil.queryOne(
-        "select material_id__v from documents where version_id = '"+documentVersionId+"'"
-      ).getValue("material_id__v", ValueType.STRING);
+      return materialIdLookup().get(documentVersionId);
+    }
+
+    private LookupCoalescer materialIdLookup() {
+      return LookupCoalescer.forQuery(
+        "select version_id, material_id__v from documents" +
+        " where version_id contains " + QueryUtil.CONTAINS_LIST +
+        " order by id",
+        "version_id", "material_id__v", false
+      );
+    }
+
+    // Queue the Material ID and Project Manager lookups for every record processed after insert/update, so
+    // that processRecordInsertUpdate() resolves them with one query per batch instead of one per record.
+    private void requestDocumentLookups(RecordTriggerContext recordTriggerContext) {
+
+      RecordEvent recordEvent = recordTriggerContext.getRecordEvent();
+      if (recordEvent != RecordEvent.AFTER_INSERT && recordEvent != RecordEvent.AFTER_UPDATE) {
+        return;
+      }
+
+      List<String> docVersionIds = VaultCollections.newList();
+      List<String> docIds = VaultCollections.newList();
+      for (RecordChange inputRecord : recordTriggerContext.getRecordChanges()) {
+        String docVersionId = getDocumentVersionId(inputRecord.getNew());
+        if (docVersionId != null) {
+          docVersionIds.add(docVersionId);
+          docIds.add(LookupCoalescer.numericKey(DocVersionIdParts.id(docVersionId)));
+        }
+      }
+
+      materialIdLookup().request(docVersionIds);
+      Util.requestUsersInDocumentRole(docIds, "project_manager__c");
     }
 
     private String getRecordId(Record record) {
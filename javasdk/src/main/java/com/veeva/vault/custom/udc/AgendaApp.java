@@ -5,9 +5,9 @@ import com.veeva.vault.sdk.api.data.RecordService;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  *  Methods needed to support the Review Agenda App.
@@ -22,9 +22,10 @@ public class AgendaApp {
     public static final String AGENDA_ITEM_SEMAPHORE = "semaphore";
     
     public static String getAgendaMeetingTime(String agendaId) {
-      return QueryUtil.queryOne(
-        "select meeting_time__c from agenda__c where id = '"+agendaId+"'"
-      ).getValue("meeting_time__c", ValueType.STRING);
+      String query = VqlTemplate.get("select meeting_time__c from agenda__c where id = :agendaId")
+        .setString("agendaId", agendaId)
+        .render();
+      return QueryUtil.queryOne(query).getValue("meeting_time__c", ValueType.STRING);
     }
 
     /**
@@ -35,40 +36,59 @@ public class AgendaApp {
       RecordService recordService = ServiceLocator.locate(RecordService.class);
       List<String> inactive__v = VaultCollections.asList("inactive__v");
 
-      LocalDate dtToday = LocalDate.now();
-      DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-      String strToday = dtToday.format(formatter);
-
-      Iterator<QueryExecutionResult> iterator = QueryUtil.query(
-        "select id, name__v " +
+      String query = VqlTemplate.get(
+        "select id, name__v, state__v " +
           "from agenda__c "+
-         "where meeting_date__c < '"+strToday+"' " +
+         "where meeting_date__c < :today " +
            "and status__v = 'active__v'"
-      ).streamResults().iterator();
+      ).setDate("today", LocalDate.now()).render();
+
+      Iterator<QueryExecutionResult> iterator = QueryUtil.query(query).streamResults().iterator();
 
       if (! iterator.hasNext()) {
         logger.info("No past Agendas found.");
       }
 
-      VaultAPI vapi = new VaultAPI("local_connection__c");
-      String actionName = null;
+      // The "Make Inactive" action name depends on the lifecycle state, so group the agendas by state...
+      List<String> states = VaultCollections.newList();
+      Map<String, List<String>> idsByState = VaultCollections.newMap();
 
       while (iterator.hasNext()) {
         QueryExecutionResult result = iterator.next();
         String id = result.getValue("id", ValueType.STRING);
         String name = result.getValue("name__v", ValueType.STRING);
+        String state = result.getValue("state__v", ValueType.STRING);
         logger.info("Found agenda "+id+": '"+name+"'");
-        if (actionName == null) {
-          actionName = vapi.getObjectUserActionName("agenda__c", id, "Make Inactive");
+        List<String> ids = idsByState.get(state);
+        if (ids == null) {
+          ids = VaultCollections.newList();
+          idsByState.put(state, ids);
+          states.add(state);
         }
-        vapi.initiateObjectRecordUserAction("agenda__c", id, actionName);
+        ids.add(id);
+      }  // end while()
+
+      VaultAPI vapi = new VaultAPI("local_connection__c");
+
+      for (String state : states) {
+        List<String> ids = idsByState.get(state);
+        String actionName = vapi.getObjectUserActionName("agenda__c", ids.get(0), "Make Inactive");
         if (vapi.failed()) {
           throw new RollbackException(
             ErrorType.OPERATION_FAILED,
-            "id + \": an error occured: \" + errorType + \": \" + errorMsg"
+            ids.get(0) + ": an error occured: " + vapi.getErrorType() + ": " + vapi.getErrorMessage()
           );
         }
-      }  // end while()
+        BulkActionResult result = vapi.initiateBulkObjectRecordUserAction("agenda__c", ids, actionName);
+        logger.info("Make Inactive: " + result.toString());
+        if (result.hasFailures()) {
+          String id = result.getFailedIds().get(0);
+          throw new RollbackException(
+            ErrorType.OPERATION_FAILED,
+            id + ": an error occured: " + result.getErrorType(id) + ": " + result.getErrorMessage(id)
+          );
+        }
+      }
 
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,7 @@
 package com.veeva.vault.custom.udc;
 
-import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
 import com.veeva.vault.sdk.api.data.Record;
-import com.veeva.vault.sdk.api.data.RecordService;
 
 import java.math.BigDecimal;
 
@@ -16,22 +14,23 @@ import java.math.BigDecimal;
 @UserDefinedClassInfo
 public class AgendaItem {
 
+    private static final String ORDER = "order__c";
+    private static final String START_TIME = "start_time__c";
+    private static final String END_TIME = "end_time__c";
+
     private String recordId;
-    private BigDecimal order;
     private BigDecimal duration;
 
-    private String startTime;
-    private String endTime;
-
-    private boolean changed;
+    // order, start time and end time, with their values as queried
+    private TrackedRecord tracked;
 
     public AgendaItem(String recordId, BigDecimal order, BigDecimal duration, String startTime, String endTime) {
       this.recordId = recordId;
-      this.order = order;
       this.duration = duration;
-      this.startTime = startTime;
-      this.endTime = endTime;
-      this.changed = false;
+      this.tracked = new TrackedRecord("agenda_item__c", recordId)
+        .snapshot(ORDER, order)
+        .snapshot(START_TIME, startTime)
+        .snapshot(END_TIME, endTime);
     }
 
     public String getRecordId() {
@@ -39,15 +38,12 @@ public class AgendaItem {
     }
 
     public BigDecimal getOrder() {
-      return this.order;
+      return (BigDecimal) this.tracked.getValue(ORDER);
     }
 
     public void setOrder(BigDecimal order) {
-      if (this.order == null || order.intValue() != this.order.intValue()) {
-        // note: in the context of this App, the incoming value will never be null.
-        this.order = new BigDecimal(order.intValue());
-        this.changed = true;
-      }
+      // note: in the context of this App, the incoming value will never be null.
+      this.tracked.setValue(ORDER, new BigDecimal(order.intValue()));
     }
     public void setOrder(int order) {
       this.setOrder(new BigDecimal(order));
@@ -58,29 +54,15 @@ public class AgendaItem {
     }
 
     public void setStartTime(String startTime) {
-      if (
-        (this.startTime == null && startTime != null ) ||
-        (this.startTime != null && startTime == null) ||
-        (startTime != null && !startTime.equals(this.startTime))
-      ) {
-        this.startTime = startTime;
-        this.changed = true;
-      }
+      this.tracked.setValue(START_TIME, startTime);
     }
 
     public void setEndTime(String endTime) {
-      if (
-        (this.endTime == null && endTime != null ) ||
-        (this.endTime != null && endTime == null) ||
-        (endTime != null && !endTime.equals(this.endTime))
-      ) {
-        this.endTime = endTime;
-        this.changed = true;
-      }
+      this.tracked.setValue(END_TIME, endTime);
     }
 
     public boolean isChanged() {
-        return this.changed;
+        return this.tracked.isChanged();
     }
 
     @Override
@@ -88,12 +70,11 @@ public class AgendaItem {
       return ((AgendaItem) otherItem).recordId.equals(this.recordId);
     }
 
+    /**
+     * Return a Record containing only the fields that changed, or null if nothing changed.
+     * @return Record or null
+     */
     public Record getRecord() {
-      RecordService recordService = ServiceLocator.locate(RecordService.class);
-      Record record = recordService.newRecordWithId("agenda_item__c", this.recordId);
-      record.setValue("order__c", this.order);
-      record.setValue("start_time__c", this.startTime);
-      record.setValue("end_time__c", this.endTime);
-      return record;
+      return this.tracked.toRecord();
     }
-}
\ No newline at end of file
+}
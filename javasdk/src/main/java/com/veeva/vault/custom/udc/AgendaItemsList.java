@@ -5,7 +5,6 @@ import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.data.Record;
-import com.veeva.vault.sdk.api.query.QueryExecutionResponse;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.math.BigDecimal;
@@ -54,13 +53,14 @@ public class AgendaItemsList {
 
       this.agendaItems = VaultCollections.newList();
 
-      // the 'order by' clause is crucial to the operation of methods in this class
-      QueryExecutionResponse response = QueryUtil.query(
+      // the 'order by' clause is crucial to the operation of methods in this class (the 'id'
+      // tie-breaker keeps paging stable)
+      String query = VqlTemplate.get(
         "select id, order__c, duration__c, start_time__c, end_time__c from agenda_item__c" +
-          " where agenda__c = '"+agendaId+"'" +
-          "order by order__c asc"
-      );
-      Iterator<QueryExecutionResult> iterator = response.streamResults().iterator();
+          " where agenda__c = :agendaId" +
+          " order by order__c asc, id asc"
+      ).setString("agendaId", agendaId).render();
+      Iterator<QueryExecutionResult> iterator = QueryUtil.queryPaged(query);
 
       while (iterator.hasNext()) {
         QueryExecutionResult result = iterator.next();
@@ -0,0 +1,53 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/**
+ * One record that failed to save or delete in a BatchWriter operation.
+ */
+
+@UserDefinedClassInfo
+public class BatchWriteFailure {
+
+    private int inputPosition;
+    private String recordId;
+    private String errorType;
+    private String errorMessage;
+
+    BatchWriteFailure(int inputPosition, String recordId, String errorType, String errorMessage) {
+      this.inputPosition = inputPosition;
+      this.recordId = recordId;
+      this.errorType = errorType;
+      this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Return the position of the failed record in the list passed to BatchWriter.
+     * @return int
+     */
+    public int getInputPosition() {
+      return this.inputPosition;
+    }
+
+    /**
+     * Return the ID of the failed record, or null if the record is new.
+     * @return String or null
+     */
+    public String getRecordId() {
+      return this.recordId;
+    }
+
+    public String getErrorType() {
+      return this.errorType;
+    }
+
+    public String getErrorMessage() {
+      return this.errorMessage;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + this.inputPosition + "] " + (this.recordId == null ? "(new record)" : this.recordId) +
+        ": " + this.errorType + ": " + this.errorMessage;
+    }
+}
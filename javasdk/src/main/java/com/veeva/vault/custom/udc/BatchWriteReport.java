@@ -0,0 +1,117 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+
+/**
+ * The outcome of a BatchWriter save or delete: the records that failed, and per-chunk counts and timing.
+ */
+
+@UserDefinedClassInfo
+public class BatchWriteReport {
+
+    private String operation;
+    private int recordCount;
+    private int successCount;
+    private List<BatchWriteFailure> failures;
+
+    // per chunk, in the order the chunks were written
+    private List<Integer> chunkSizes;
+    private List<Integer> chunkFailureCounts;
+    private List<Long> chunkElapsedMillis;
+
+    BatchWriteReport(String operation, int recordCount) {
+      this.operation = operation;
+      this.recordCount = recordCount;
+      this.successCount = 0;
+      this.failures = VaultCollections.newList();
+      this.chunkSizes = VaultCollections.newList();
+      this.chunkFailureCounts = VaultCollections.newList();
+      this.chunkElapsedMillis = VaultCollections.newList();
+    }
+
+    void addSuccesses(int count) {
+      this.successCount += count;
+    }
+
+    void addFailure(BatchWriteFailure failure) {
+      this.failures.add(failure);
+    }
+
+    void addChunk(int size, int failureCount, long elapsedMillis) {
+      this.chunkSizes.add(Integer.valueOf(size));
+      this.chunkFailureCounts.add(Integer.valueOf(failureCount));
+      this.chunkElapsedMillis.add(Long.valueOf(elapsedMillis));
+    }
+
+    /**
+     * Return "save" or "delete".
+     * @return String
+     */
+    public String getOperation() {
+      return this.operation;
+    }
+
+    public int getRecordCount() {
+      return this.recordCount;
+    }
+
+    public int getSuccessCount() {
+      return this.successCount;
+    }
+
+    public int getFailureCount() {
+      return this.failures.size();
+    }
+
+    public boolean hasFailures() {
+      return !this.failures.isEmpty();
+    }
+
+    public List<BatchWriteFailure> getFailures() {
+      return this.failures;
+    }
+
+    public int getChunkCount() {
+      return this.chunkSizes.size();
+    }
+
+    public int getChunkSize(int chunk) {
+      return this.chunkSizes.get(chunk).intValue();
+    }
+
+    public int getChunkFailureCount(int chunk) {
+      return this.chunkFailureCounts.get(chunk).intValue();
+    }
+
+    public long getChunkElapsedMillis(int chunk) {
+      return this.chunkElapsedMillis.get(chunk).longValue();
+    }
+
+    /**
+     * Return the throughput of a chunk in records per second, or the chunk size if it took under 1ms.
+     * @param chunk - int
+     * @return long
+     */
+    public long getChunkRecordsPerSecond(int chunk) {
+      long elapsed = this.getChunkElapsedMillis(chunk);
+      return elapsed == 0 ? this.getChunkSize(chunk) : this.getChunkSize(chunk) * 1000L / elapsed;
+    }
+
+    public long getElapsedMillis() {
+      long elapsed = 0;
+      for (Long chunkElapsed : this.chunkElapsedMillis) {
+        elapsed += chunkElapsed.longValue();
+      }
+      return elapsed;
+    }
+
+    @Override
+    public String toString() {
+      return "Batch " + this.operation + ": " + this.successCount + " of " + this.recordCount +
+        " records succeeded, " + this.failures.size() + " failed, in " + this.getChunkCount() +
+        " chunk(s), " + this.getElapsedMillis() + "ms";
+    }
+}
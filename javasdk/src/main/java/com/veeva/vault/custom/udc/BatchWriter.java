@@ -0,0 +1,146 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.BatchOperation;
+import com.veeva.vault.sdk.api.core.BatchOperationError;
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.data.PositionalRecordId;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+
+import java.util.List;
+
+/**
+ * Saves or deletes a list of records in chunks of at most chunkSize records (default DEFAULT_CHUNK_SIZE,
+ * the platform's batch limit), and reports the outcome in a BatchWriteReport.
+ *
+ * There are two modes:
+ *   - all-or-nothing (the default): the first chunk with a failed record throws a RollbackException, which
+ *     rolls back the whole transaction, including the chunks already written.
+ *   - best-effort: failed records are collected into the report, with their input position and error, and
+ *     the remaining chunks are still written.  The caller decides what to do about the failures.
+ *
+ * Example usage:
+ *
+ *    BatchWriteReport report = new BatchWriter()
+ *      .setBestEffort(true)
+ *      .setLogger(logger)      // optional; logs the throughput of each chunk
+ *      .save(records);
+ *    for (BatchWriteFailure failure : report.getFailures()) {
+ *      ...
+ *    }
+ *
+ * Request-scoped query results (QueryCache, LookupCoalescer, UserDirectory) that read
+ * the objects being written are discarded before writing.
+ */
+
+@UserDefinedClassInfo
+public class BatchWriter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final String SAVE = "save";
+    private static final String DELETE = "delete";
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean bestEffort = false;
+    private Logger logger = null;
+
+    public BatchWriter setChunkSize(int chunkSize) {
+      this.chunkSize = chunkSize;
+      return this;
+    }
+
+    /**
+     * Collect failed records into the report instead of rolling back.  Default is false (all-or-nothing).
+     * @param bestEffort - boolean
+     * @return this BatchWriter
+     */
+    public BatchWriter setBestEffort(boolean bestEffort) {
+      this.bestEffort = bestEffort;
+      return this;
+    }
+
+    /**
+     * Log the record count, failure count and throughput of each chunk.
+     * @param logger - Logger
+     * @return this BatchWriter
+     */
+    public BatchWriter setLogger(Logger logger) {
+      this.logger = logger;
+      return this;
+    }
+
+    public BatchWriteReport save(List<Record> records) {
+      return this.write(SAVE, records);
+    }
+
+    public BatchWriteReport delete(List<Record> records) {
+      return this.write(DELETE, records);
+    }
+
+    private BatchWriteReport write(String operation, List<Record> records) {
+
+      Util.invalidateCachedQueries(records);
+
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      BatchWriteReport report = new BatchWriteReport(operation, records.size());
+
+      for (int start = 0; start < records.size(); start += this.chunkSize) {
+
+        List<Record> chunk = records.subList(start, Math.min(start + this.chunkSize, records.size()));
+        int chunkStart = start;
+        int failuresBefore = report.getFailureCount();
+        long startMillis = Util.currentTimeMillis();
+
+        BatchOperation<PositionalRecordId, BatchOperationError> batchOperation = operation.equals(SAVE) ?
+          recordService.batchSaveRecords(
+            recordService.newRecordBatchSaveRequestBuilder().withRecords(chunk).build()
+          ) :
+          recordService.batchDeleteRecords(
+            recordService.newRecordBatchDeleteRequestBuilder().withRecords(chunk).build()
+          );
+
+        batchOperation
+          .onSuccesses(successes -> report.addSuccesses(successes.size()))
+          .onErrors(errors -> {
+            for (BatchOperationError error : errors) {
+              int position = error.getInputPosition();
+              report.addFailure(new BatchWriteFailure(
+                chunkStart + position,
+                chunk.get(position).getValue("id", ValueType.STRING),
+                error.getError().getType(),
+                error.getError().getMessage()
+              ));
+            }
+          })
+          .execute();
+
+        long elapsedMillis = Util.currentTimeMillis() - startMillis;
+        int chunkFailures = report.getFailureCount() - failuresBefore;
+        report.addChunk(chunk.size(), chunkFailures, elapsedMillis);
+
+        if (this.logger != null) {
+          int chunkIndex = report.getChunkCount() - 1;
+          this.logger.info(
+            "Batch " + operation + " chunk " + (chunkIndex + 1) + ": " + chunk.size() + " records, " +
+            chunkFailures + " failed, " + elapsedMillis + "ms, " +
+            report.getChunkRecordsPerSecond(chunkIndex) + " records/s"
+          );
+        }
+
+        if (chunkFailures > 0 && !this.bestEffort) {
+          BatchWriteFailure firstFailure = report.getFailures().get(failuresBefore);
+          throw new RollbackException(
+            ErrorType.OPERATION_FAILED,
+            "An error occurred " + (operation.equals(SAVE) ? "saving" : "deleting") + " one or more records (" +
+              chunkFailures + " failed): " + firstFailure.getErrorMessage()
+          );
+        }
+      }
+
+      return report;
+    }
+}
@@ -0,0 +1,133 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The per-document or per-record outcome of a bulk VaultAPI user action, keyed by the ID's passed to it
+ * (document version ID's or record ID's).  An ID that failed has an error type and message.  An ID
+ * handled by a bulk endpoint that runs as a Vault job is "submitted": the job was accepted, but its outcome
+ * is not known when the call returns, so the caller must check it later (e.g. the document's state in the
+ * job's completion).  The job ID of each such call is reported.  The rest of the ID's succeeded.
+ *
+ * Example usage:
+ *
+ *    BulkActionResult result = vaultAPI.initiateBulkDocumentUserAction(docVersionIds, lifecycle, state, actionName);
+ *    for (String docVersionId : result.getFailedIds()) {
+ *      logger.log(docVersionId + " failed with " + result.getErrorType(docVersionId) + ": " +
+ *        result.getErrorMessage(docVersionId));
+ *    }
+ */
+
+@UserDefinedClassInfo
+public class BulkActionResult {
+
+    private List<String> succeededIds;
+    private List<String> submittedIds;
+    private List<String> failedIds;
+    private Map<String, String> errorTypes;
+    private Map<String, String> errorMessages;
+    private List<String> jobIds;
+    private int callCount;
+
+    BulkActionResult() {
+      this.succeededIds = VaultCollections.newList();
+      this.submittedIds = VaultCollections.newList();
+      this.failedIds = VaultCollections.newList();
+      this.errorTypes = VaultCollections.newMap();
+      this.errorMessages = VaultCollections.newMap();
+      this.jobIds = VaultCollections.newList();
+      this.callCount = 0;
+    }
+
+    void addSuccess(String id) {
+      this.succeededIds.add(id);
+    }
+
+    void addSubmitted(String id) {
+      this.submittedIds.add(id);
+    }
+
+    void addFailure(String id, String errorType, String errorMessage) {
+      this.failedIds.add(id);
+      this.errorTypes.put(id, errorType);
+      this.errorMessages.put(id, errorMessage);
+    }
+
+    void addJobId(String jobId) {
+      this.jobIds.add(jobId);
+    }
+
+    void addCall() {
+      this.callCount++;
+    }
+
+    public boolean isSuccess(String id) {
+      return this.succeededIds.contains(id);
+    }
+
+    public boolean hasFailures() {
+      return !this.failedIds.isEmpty();
+    }
+
+    public List<String> getSucceededIds() {
+      return this.succeededIds;
+    }
+
+    /**
+     * Return the ID's handed to a Vault job that was accepted; whether the action succeeded for them is not
+     * yet known.
+     * @return List<String>
+     */
+    public List<String> getSubmittedIds() {
+      return this.submittedIds;
+    }
+
+    public List<String> getFailedIds() {
+      return this.failedIds;
+    }
+
+    /**
+     * Return the error type for a failed ID, or null if the ID did not fail.
+     * @param id - String
+     * @return String or null
+     */
+    public String getErrorType(String id) {
+      return this.errorTypes.get(id);
+    }
+
+    /**
+     * Return the error message for a failed ID, or null if the ID did not fail.
+     * @param id - String
+     * @return String or null
+     */
+    public String getErrorMessage(String id) {
+      return this.errorMessages.get(id);
+    }
+
+    /**
+     * Return the ID's of the Vault jobs started, one per call, for endpoints that run as a job.
+     * @return List<String>
+     */
+    public List<String> getJobIds() {
+      return this.jobIds;
+    }
+
+    /**
+     * Return the number of HTTP calls made.
+     * @return int
+     */
+    public int getCallCount() {
+      return this.callCount;
+    }
+
+    @Override
+    public String toString() {
+      return this.succeededIds.size() + " succeeded, " + this.submittedIds.size() + " submitted, " +
+        this.failedIds.size() + " failed, in " +
+        this.callCount + " call(s)";
+    }
+}
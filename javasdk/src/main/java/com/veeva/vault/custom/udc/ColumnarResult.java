@@ -0,0 +1,297 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Iterator;
+
+/**
+ * Loads a declared set of query columns into primitive column arrays, so that callers can loop over
+ * plain arrays instead of calling QueryExecutionResult.getValue() per field per row.
+ *
+ *   - addString - String[] column
+ *   - addInt / addLong - int[] / long[] column for Number fields
+ *   - addBoolean - bitset column for Yes/No fields
+ *   - addDate - long[] column holding LocalDate epoch days for Date fields
+ *
+ * Every column also has a null bitset; a null Number, Yes/No or Date value is stored as 0 (false) and
+ * flagged as null.  Test a bit of a bitset column with isSet().  Look up each column once, before the
+ * loop over the rows.  Example usage:
+ *
+ *    ColumnarResult columns = new ColumnarResult()
+ *      .addString("id")
+ *      .addInt("order__c")
+ *      .load(QueryUtil.queryPaged("select id, order__c from agenda_item__c order by order__c"));
+ *    String[] ids = columns.getStrings("id");
+ *    int[] orders = columns.getInts("order__c");
+ *    long[] orderNulls = columns.getNulls("order__c");
+ *    for (int row = 0; row < columns.size(); row++) {
+ *      if (!ColumnarResult.isSet(orderNulls, row)) { ... orders[row] ... }
+ *    }
+ *
+ * Declare all columns before calling load().  The arrays returned by the getters may be longer than
+ * size(); only the first size() entries are rows.
+ */
+
+@UserDefinedClassInfo
+public class ColumnarResult {
+
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_BOOLEAN = 4;
+    private static final int TYPE_DATE = 5;
+
+    private static final int MAX_COLUMNS = 32;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] names = new String[MAX_COLUMNS];
+    private int[] types = new int[MAX_COLUMNS];
+    private int columnCount = 0;
+
+    // per column, only the array matching the column's type is allocated
+    private String[][] strings = new String[MAX_COLUMNS][];
+    private int[][] ints = new int[MAX_COLUMNS][];
+    private long[][] longs = new long[MAX_COLUMNS][];
+    private long[][] booleans = new long[MAX_COLUMNS][];
+    private long[][] nulls = new long[MAX_COLUMNS][];
+
+    private int capacity = 0;
+    private int size = 0;
+
+    public ColumnarResult addString(String fieldName) {
+      return this.addColumn(fieldName, TYPE_STRING);
+    }
+
+    public ColumnarResult addInt(String fieldName) {
+      return this.addColumn(fieldName, TYPE_INT);
+    }
+
+    public ColumnarResult addLong(String fieldName) {
+      return this.addColumn(fieldName, TYPE_LONG);
+    }
+
+    public ColumnarResult addBoolean(String fieldName) {
+      return this.addColumn(fieldName, TYPE_BOOLEAN);
+    }
+
+    public ColumnarResult addDate(String fieldName) {
+      return this.addColumn(fieldName, TYPE_DATE);
+    }
+
+    /**
+     * Load the declared columns from every row of the results.  Rows are appended to any rows already loaded.
+     * @param results - Iterator<QueryExecutionResult>, e.g. from QueryUtil.queryPaged() or a ContainsQuery.
+     * @return this ColumnarResult
+     */
+    public ColumnarResult load(Iterator<QueryExecutionResult> results) {
+
+      if (this.capacity == 0) {
+        this.grow();
+      }
+
+      while (results.hasNext()) {
+
+        QueryExecutionResult result = results.next();
+
+        if (this.size == this.capacity) {
+          this.grow();
+        }
+        int row = this.size;
+
+        for (int col = 0; col < this.columnCount; col++) {
+          String name = this.names[col];
+          switch (this.types[col]) {
+            case TYPE_STRING: {
+              String value = result.getValue(name, ValueType.STRING);
+              this.strings[col][row] = value;
+              if (value == null) {
+                setBit(this.nulls[col], row);
+              }
+              break;
+            }
+            case TYPE_INT: {
+              BigDecimal value = result.getValue(name, ValueType.NUMBER);
+              if (value == null) {
+                setBit(this.nulls[col], row);
+              } else {
+                this.ints[col][row] = value.intValue();
+              }
+              break;
+            }
+            case TYPE_LONG: {
+              BigDecimal value = result.getValue(name, ValueType.NUMBER);
+              if (value == null) {
+                setBit(this.nulls[col], row);
+              } else {
+                this.longs[col][row] = value.longValue();
+              }
+              break;
+            }
+            case TYPE_BOOLEAN: {
+              Boolean value = result.getValue(name, ValueType.BOOLEAN);
+              if (value == null) {
+                setBit(this.nulls[col], row);
+              } else if (value.booleanValue()) {
+                setBit(this.booleans[col], row);
+              }
+              break;
+            }
+            case TYPE_DATE: {
+              LocalDate value = result.getValue(name, ValueType.DATE);
+              if (value == null) {
+                setBit(this.nulls[col], row);
+              } else {
+                this.longs[col][row] = value.toEpochDay();
+              }
+              break;
+            }
+          }
+        }
+
+        this.size++;
+      }
+
+      return this;
+    }
+
+    /**
+     * Return the number of rows loaded.
+     * @return int
+     */
+    public int size() {
+      return this.size;
+    }
+
+    public String[] getStrings(String fieldName) {
+      return this.strings[this.column(fieldName, TYPE_STRING)];
+    }
+
+    public int[] getInts(String fieldName) {
+      return this.ints[this.column(fieldName, TYPE_INT)];
+    }
+
+    public long[] getLongs(String fieldName) {
+      return this.longs[this.column(fieldName, TYPE_LONG)];
+    }
+
+    /**
+     * Return the epoch-day column of a Date field.  Use LocalDate.ofEpochDay() to convert a non-null value.
+     * @param fieldName
+     * @return long[]
+     */
+    public long[] getEpochDays(String fieldName) {
+      return this.longs[this.column(fieldName, TYPE_DATE)];
+    }
+
+    /**
+     * Return the bitset column of a Yes/No field: the bit of a row is set if the value is true.
+     * @param fieldName
+     * @return long[]
+     */
+    public long[] getBooleans(String fieldName) {
+      return this.booleans[this.column(fieldName, TYPE_BOOLEAN)];
+    }
+
+    /**
+     * Return the null bitset of a column: the bit of a row is set if the value is null.
+     * @param fieldName
+     * @return long[]
+     */
+    public long[] getNulls(String fieldName) {
+      return this.nulls[this.column(fieldName, 0)];
+    }
+
+    /**
+     * Return true if the bit of a row is set in a bitset column (see getBooleans and getNulls).
+     * @param bits - long[]
+     * @param row - int
+     * @return boolean
+     */
+    public static boolean isSet(long[] bits, int row) {
+      return getBit(bits, row);
+    }
+
+    private ColumnarResult addColumn(String fieldName, int type) {
+      if (this.columnCount == MAX_COLUMNS) {
+        throw new RollbackException(ErrorType.OPERATION_FAILED, "ColumnarResult supports at most " + MAX_COLUMNS + " columns");
+      }
+      this.names[this.columnCount] = fieldName;
+      this.types[this.columnCount] = type;
+      this.columnCount++;
+      return this;
+    }
+
+    // Return the index of the named column.  A type of 0 matches a column of any type.
+    private int column(String fieldName, int type) {
+      for (int col = 0; col < this.columnCount; col++) {
+        if (this.names[col].equals(fieldName) && (type == 0 || this.types[col] == type)) {
+          return col;
+        }
+      }
+      throw new RollbackException(ErrorType.OPERATION_FAILED, "ColumnarResult has no such column: " + fieldName);
+    }
+
+    private void grow() {
+
+      int newCapacity = this.capacity == 0 ? INITIAL_CAPACITY : this.capacity * 2;
+      int newWords = (newCapacity + 63) >> 6;
+
+      for (int col = 0; col < this.columnCount; col++) {
+        switch (this.types[col]) {
+          case TYPE_STRING:
+            this.strings[col] = copyOf(this.strings[col], newCapacity, this.size);
+            break;
+          case TYPE_INT:
+            this.ints[col] = copyOf(this.ints[col], newCapacity, this.size);
+            break;
+          case TYPE_LONG:
+          case TYPE_DATE:
+            this.longs[col] = copyOf(this.longs[col], newCapacity, this.size);
+            break;
+          case TYPE_BOOLEAN:
+            this.booleans[col] = copyOf(this.booleans[col], newWords, (this.size + 63) >> 6);
+            break;
+        }
+        this.nulls[col] = copyOf(this.nulls[col], newWords, (this.size + 63) >> 6);
+      }
+
+      this.capacity = newCapacity;
+    }
+
+    private static String[] copyOf(String[] from, int length, int used) {
+      String[] to = new String[length];
+      for (int i = 0; i < used; i++) {
+        to[i] = from[i];
+      }
+      return to;
+    }
+
+    private static int[] copyOf(int[] from, int length, int used) {
+      int[] to = new int[length];
+      for (int i = 0; i < used; i++) {
+        to[i] = from[i];
+      }
+      return to;
+    }
+
+    private static long[] copyOf(long[] from, int length, int used) {
+      long[] to = new long[length];
+      for (int i = 0; i < used; i++) {
+        to[i] = from[i];
+      }
+      return to;
+    }
+
+    private static void setBit(long[] bits, int index) {
+      bits[index >> 6] |= 1L << (index & 63);
+    }
+
+    private static boolean getBit(long[] bits, int index) {
+      return (bits[index >> 6] & (1L << (index & 63))) != 0;
+    }
+}
@@ -3,11 +3,8 @@ package com.veeva.vault.custom.udc;
 import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
 import com.veeva.vault.sdk.api.core.ValueType;
-import com.veeva.vault.sdk.api.core.VaultCollections;
 import com.veeva.vault.sdk.api.data.Record;
 import com.veeva.vault.sdk.api.data.RecordService;
-import com.veeva.vault.sdk.api.document.DocumentService;
-import com.veeva.vault.sdk.api.document.DocumentVersion;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.time.LocalDate;
@@ -46,11 +43,14 @@ public class CompliancePackage {
 
       String commentsRecordId;
       Boolean commentsAreLocked;
+      String currentComments = null;
 
       // Check if the Binder has a "Submission Comments" object reference value ...
 
       List<String> commentsRefField = QueryUtil.queryOne(
-        "select 2253_comments__c from documents where id = " + binderId
+        VqlTemplate.get("select 2253_comments__c from documents where id = :binderId")
+          .setNumber("binderId", Long.parseLong(binderId))
+          .render()
         ).getValue("2253_comments__c", ValueType.REFERENCES);
       if (commentsRefField!= null) {
         commentsRecordId = commentsRefField.get(0);
@@ -63,9 +63,13 @@ public class CompliancePackage {
       if (commentsRecordId == null) {
         commentsAreLocked = Boolean.valueOf(false);
       } else {
-        commentsAreLocked = QueryUtil.queryOne(
-          "select comments_locked__c from submission_comments__c where id = '"+commentsRecordId+"'"
-        ).getValue("comments_locked__c", ValueType.BOOLEAN);
+        QueryExecutionResult commentsResult = QueryUtil.queryOne(
+          VqlTemplate.get("select comments_locked__c, comments__c from submission_comments__c where id = :commentsId")
+            .setString("commentsId", commentsRecordId)
+            .render()
+        );
+        commentsAreLocked = commentsResult.getValue("comments_locked__c", ValueType.BOOLEAN);
+        currentComments = commentsResult.getValue("comments__c", ValueType.STRING);
         if (commentsAreLocked == null) {
           commentsAreLocked = Boolean.valueOf(false);
         }
@@ -79,31 +83,48 @@ public class CompliancePackage {
 
       StringBuilder commentsSB = new StringBuilder(10000); // The Comments object field is Long Text (10,000)
 
-    Iterator<QueryExecutionResult> iter = QueryUtil.query(
-      "select document__sysr.version_id," +
-        "  document__sysr.material_id__v," +
-        "  document__sysr.distribution_details__c," +
-        "  document__sysr.replacement_material__c," +
-        "  document__sysr.previous_material_id__c," +
-        "  document__sysr.previous_material_name__c," +
-        "  document__sysr.previous_material_submission_date__c" +
-        "  from binder_node__sys" +
-        " where binder__sysr.id = " + binderId +
-        "   and type__sys = 'document__sys'" +
-        "   and toName(document__sysr.type__v) = 'material__c'"
-    ).streamResults().iterator();
-
-      while (iter.hasNext()) {
-        QueryExecutionResult result = iter.next();
-        String materialId = result.getValue("document__sysr.material_id__v", ValueType.STRING);
-        String distributionDetails = result.getValue("document__sysr.distribution_details__c", ValueType.STRING);
-        Boolean replacementMaterial = result.getValue("document__sysr.replacement_material__c", ValueType.BOOLEAN);
-        if (replacementMaterial == null) replacementMaterial = Boolean.valueOf(false);
-        String prevMaterialId = result.getValue("document__sysr.previous_material_id__c", ValueType.STRING);
-        String prevMaterialName = result.getValue("document__sysr.previous_material_name__c", ValueType.STRING);
-        LocalDate prevSubmissionDate = result.getValue("document__sysr.previous_material_submission_date__c", ValueType.DATE);
-
-        if (distributionDetails == null && replacementMaterial.booleanValue() == false) {
+      String materialsQuery = VqlTemplate.get(
+        "select document__sysr.version_id," +
+          "  document__sysr.material_id__v," +
+          "  document__sysr.distribution_details__c," +
+          "  document__sysr.replacement_material__c," +
+          "  document__sysr.previous_material_id__c," +
+          "  document__sysr.previous_material_name__c," +
+          "  document__sysr.previous_material_submission_date__c" +
+          "  from binder_node__sys" +
+          " where binder__sysr.id = :binderId" +
+          "   and type__sys = 'document__sys'" +
+          "   and toName(document__sysr.type__v) = 'material__c'"
+      ).setNumber("binderId", Long.parseLong(binderId)).render();
+
+      ColumnarResult materials = new ColumnarResult()
+        .addString("document__sysr.material_id__v")
+        .addString("document__sysr.distribution_details__c")
+        .addBoolean("document__sysr.replacement_material__c")
+        .addString("document__sysr.previous_material_id__c")
+        .addString("document__sysr.previous_material_name__c")
+        .addDate("document__sysr.previous_material_submission_date__c")
+        .load(QueryUtil.query(materialsQuery).streamResults().iterator());
+
+      String[] materialIds = materials.getStrings("document__sysr.material_id__v");
+      String[] distributionDetailsColumn = materials.getStrings("document__sysr.distribution_details__c");
+      String[] prevMaterialIds = materials.getStrings("document__sysr.previous_material_id__c");
+      String[] prevMaterialNames = materials.getStrings("document__sysr.previous_material_name__c");
+      long[] prevSubmissionDays = materials.getEpochDays("document__sysr.previous_material_submission_date__c");
+      long[] prevSubmissionDayNulls = materials.getNulls("document__sysr.previous_material_submission_date__c");
+      long[] replacementMaterials = materials.getBooleans("document__sysr.replacement_material__c");
+
+      for (int row = 0; row < materials.size(); row++) {
+        String materialId = materialIds[row];
+        String distributionDetails = distributionDetailsColumn[row];
+        // a null Yes/No value reads as false
+        boolean replacementMaterial = ColumnarResult.isSet(replacementMaterials, row);
+        String prevMaterialId = prevMaterialIds[row];
+        String prevMaterialName = prevMaterialNames[row];
+        LocalDate prevSubmissionDate = ColumnarResult.isSet(prevSubmissionDayNulls, row) ?
+          null : LocalDate.ofEpochDay(prevSubmissionDays[row]);
+
+        if (distributionDetails == null && replacementMaterial == false) {
           continue;
         }
 
@@ -113,7 +134,7 @@ public class CompliancePackage {
           commentsSB.append(distributionDetails);
         }
 
-        if (replacementMaterial.booleanValue() == true) {
+        if (replacementMaterial == true) {
           commentsSB
             .append("\n")
             .append("Replaces: ")
@@ -128,7 +149,7 @@ public class CompliancePackage {
 
         commentsSB.append("\n\n");
         
-      }  // end while()
+      }  // end for()
 
       if (commentsSB.length() == 0) {
         return;  // this is an unlikely scenario, but just in case
@@ -144,10 +165,11 @@ public class CompliancePackage {
         newRecord.setValue("binder_id__c", binderId);
         Util.saveRecord(newRecord);
       } else {
-        // update record comments
-        Record updateRecord = recordService.newRecordWithId("submission_comments__c", commentsRecordId);
-        updateRecord.setValue("comments__c", commentsSB.toString());
-        Util.saveRecord(updateRecord);
+        // update record comments, unless they are unchanged
+        new TrackedRecord("submission_comments__c", commentsRecordId)
+          .snapshot("comments__c", currentComments)
+          .setValue("comments__c", commentsSB.toString())
+          .save();
       }
 
     }
@@ -160,33 +182,34 @@ public class CompliancePackage {
    */
   public static void SetMaterialSubmissionDates(String binderId) {
 
-      DocumentService documentService = ServiceLocator.locate((DocumentService.class));
-      List<DocumentVersion> docVersionList = VaultCollections.newList();
-
       QueryExecutionResult submissionDateResult = QueryUtil.queryOne(
-        "select submission_date__c from documents where id = " + binderId
+        VqlTemplate.get("select submission_date__c from documents where id = :binderId")
+          .setNumber("binderId", Long.parseLong(binderId))
+          .render()
       );
       LocalDate submissionDate = submissionDateResult.getValue("submission_date__c", ValueType.DATE);
 
-      Iterator<QueryExecutionResult> iter = QueryUtil.query(
-        "select document__sysr.version_id" +
+      String materialsQuery = VqlTemplate.get(
+        "select document__sysr.version_id, document__sysr.submission_date__c" +
           "  from binder_node__sys" +
-          " where binder__sysr.id = " + binderId +
+          " where binder__sysr.id = :binderId" +
           "   and type__sys = 'document__sys'" +
           "   and toName(document__sysr.type__v) = 'material__c'"
-      ).streamResults().iterator();
+      ).setNumber("binderId", Long.parseLong(binderId)).render();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(materialsQuery).streamResults().iterator();
+
+      // Materials that already have the binder's Submission Date are not saved...
+      DocumentVersionWriter writer = new DocumentVersionWriter();
 
       while (iter.hasNext()) {
-        QueryExecutionResult result = iter.next();;
+        QueryExecutionResult result = iter.next();
         String docVersionId = result.getValue("document__sysr.version_id", ValueType.STRING);
-        DocumentVersion documentVersion = documentService.newVersionWithId(docVersionId);
-        documentVersion.setValue("submission_date__c", submissionDate);
-        docVersionList.add(documentVersion);
+        LocalDate currentDate = result.getValue("document__sysr.submission_date__c", ValueType.DATE);
+        writer.setValue(docVersionId, "submission_date__c", currentDate, submissionDate);
       }
 
-      if (docVersionList.size() > 0) {
-        documentService.saveDocumentVersions(docVersionList);
-      }
+      writer.save();
 
     }
 
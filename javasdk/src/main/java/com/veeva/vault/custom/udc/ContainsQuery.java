@@ -0,0 +1,162 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Runs a VQL query with a 'contains' filter over a list of values that may be too long for a single
+ * query.  The values are split into batches of bounded size, and the query is run once per batch,
+ * in sequence.  Duplicate values are removed before batching, so each row is returned once.
+ *
+ * The query string marks the position of the 'contains' list with QueryUtil.CONTAINS_LIST, e.g.:
+ *
+ *    ContainsQuery containsQuery = QueryUtil.queryContains(
+ *      "select id from documents where version_id contains " + QueryUtil.CONTAINS_LIST + " order by id",
+ *      documentVersionIds
+ *    );
+ *
+ * String values are quoted and escaped as VqlTemplate.setIdList() does.
+ *
+ * As an Iterator, the rows of all batches are returned as one stream; each batch is fetched page by page
+ * (see QueryPager) only when the previous batch has been consumed, so the query should contain an
+ * 'order by' clause.  count() returns the sum of the counts of all batches.  exists() and findAny() stop
+ * at the first batch that returns a row.  getBatchCount() returns the number of batches that have been
+ * queried so far.
+ */
+
+@UserDefinedClassInfo
+public class ContainsQuery implements Iterator<QueryExecutionResult> {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private String query;
+    private List<String> values;
+    private int batchSize;
+    private boolean numericValues;
+
+    private int nextBatchStart;
+    private int batchCount;
+    private Iterator<QueryExecutionResult> batch;
+
+    /**
+     * ContainsQuery constructor.
+     * @param query - String.  vql query containing QueryUtil.CONTAINS_LIST where the 'contains' list belongs.
+     * @param values - List<String>.  The values for the 'contains' list.
+     * @param batchSize - int.  The maximum number of values per query.
+     */
+    public ContainsQuery(String query, List<String> values, int batchSize) {
+
+      this.query = query;
+      this.batchSize = batchSize;
+      this.numericValues = false;
+      this.values = VaultCollections.newList();
+
+      Set<String> distinctValues = VaultCollections.newSet();
+      for (String value : values) {
+        if (distinctValues.add(value)) {
+          this.values.add(value);
+        }
+      }
+
+      this.nextBatchStart = 0;
+      this.batchCount = 0;
+      this.batch = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (this.batch == null || !this.batch.hasNext()) {
+        if (this.nextBatchStart >= this.values.size()) {
+          return false;
+        }
+        this.batch = QueryUtil.queryPaged(this.nextBatchQuery());
+      }
+      return true;
+    }
+
+    @Override
+    public QueryExecutionResult next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return this.batch.next();
+    }
+
+    /**
+     * Return the total count of rows across all batches.  Runs one count query per batch, independently
+     * of any iteration in progress.
+     * @return long
+     */
+    public long count() {
+      long count = 0;
+      for (int start = 0; start < this.values.size(); start += this.batchSize) {
+        count += QueryUtil.queryCount(this.batchQuery(start));
+        this.batchCount++;
+      }
+      return count;
+    }
+
+    /**
+     * Return the first row from the batches, or null if no batch returns a row.  Batches are queried in
+     * sequence, fetching at most one row each, and no further batches are queried once a row is found.
+     * @return QueryExecutionResult or null
+     */
+    public QueryExecutionResult findAny() {
+      for (int start = 0; start < this.values.size(); start += this.batchSize) {
+        this.batchCount++;
+        QueryExecutionResult result = QueryUtil.findAny(this.batchQuery(start));
+        if (result != null) {
+          return result;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Return true if any batch returns a row.  See findAny().
+     * @return boolean
+     */
+    public boolean exists() {
+      return this.findAny() != null;
+    }
+
+    /**
+     * Render the 'contains' list as unquoted numbers, e.g. (1,2), for a filter on a Number field.  The values
+     * must be valid numbers.
+     * @return this ContainsQuery
+     */
+    public ContainsQuery numericValues() {
+      this.numericValues = true;
+      return this;
+    }
+
+    /**
+     * Return the number of batch queries that have been run so far.
+     * @return int
+     */
+    public int getBatchCount() {
+      return this.batchCount;
+    }
+
+    private String nextBatchQuery() {
+      String batchQuery = this.batchQuery(this.nextBatchStart);
+      this.nextBatchStart += this.batchSize;
+      this.batchCount++;
+      return batchQuery;
+    }
+
+    private String batchQuery(int start) {
+      int end = Math.min(start + this.batchSize, this.values.size());
+      List<String> batchValues = this.values.subList(start, end);
+      String containsList = this.numericValues ?
+        "(" + Util.stringifyList(batchValues, ",") + ")" :
+        VqlTemplate.renderIdList(batchValues);
+      return this.query.replace(QueryUtil.CONTAINS_LIST, containsList);
+    }
+}
@@ -4,11 +4,10 @@ package com.veeva.vault.custom.udc;
   of the version id.  The constructor assumes the input value is in the format:
   "<docid>_<major>_<minor>", e.g. "10325_1_0".
 
-  This class assumes the String provided in the constructor is in the form of a Vault
-  document version ID.  No checking is done on the argument.
+  The String provided in the constructor must be in the form of a Vault document version ID;
+  otherwise a RollbackException is thrown.  See IdCodec for the packed (long) form of a version ID.
 */
 
-import com.veeva.vault.sdk.api.core.StringUtils;
 import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
 
 @UserDefinedClassInfo
@@ -23,19 +22,30 @@ public class DocVersionIdParts {
      * @param docVersionId in the form "id_major_minor", e.g. "26_0_1".
      */
     public DocVersionIdParts(String docVersionId) {
-        String a[] = StringUtils.split(docVersionId, "_");
-        this.id = Integer.parseInt(a[0]);
-        this.major = Integer.parseInt(a[1]);
-        this.minor = Integer.parseInt(a[2]);
+        this(IdCodec.packVersionId(docVersionId));
     }
 
-    public static int id(String docVersionId) { return (new DocVersionIdParts(docVersionId).id); }
+    /**
+     * Construct a DocVersionIdParts from a version id packed by IdCodec.packVersionId().
+     * @param packedVersionId
+     */
+    public DocVersionIdParts(long packedVersionId) {
+        this.id = IdCodec.docId(packedVersionId);
+        this.major = IdCodec.major(packedVersionId);
+        this.minor = IdCodec.minor(packedVersionId);
+    }
+
+    // The static methods parse without allocating.
+
+    public static int id(String docVersionId) {
+        return IdCodec.docId(IdCodec.packVersionId(docVersionId));
+    }
 
     public static int major(String docVersionId) {
-        return (new DocVersionIdParts(docVersionId).major);
+        return IdCodec.major(IdCodec.packVersionId(docVersionId));
     }
 
     public static int minor(String docVersionId) {
-        return (new DocVersionIdParts(docVersionId).minor);
+        return IdCodec.minor(IdCodec.packVersionId(docVersionId));
     }
 }
\ No newline at end of file
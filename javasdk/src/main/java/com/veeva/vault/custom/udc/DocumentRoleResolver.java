@@ -0,0 +1,111 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.document.DocumentService;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+import com.veeva.vault.sdk.api.role.DocumentRole;
+import com.veeva.vault.sdk.api.role.DocumentRoleService;
+import com.veeva.vault.sdk.api.role.GetDocumentRolesResponse;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Resolves the users in M roles on N documents in bulk, instead of one lookup per document per role:
+ *
+ *   - forVersions - one DocumentRoleService.getDocumentRoles() call per role per chunk of CHUNK_SIZE document
+ *     versions.  Uses the document versions given.
+ *   - forDocuments - one doc_role__sys query per chunk of ContainsQuery.DEFAULT_BATCH_SIZE documents, for all
+ *     roles at once.  Uses the current roles of the documents.
+ *
+ * Example usage:
+ *
+ *    DocumentRoles roles = DocumentRoleResolver.forDocuments(
+ *      docIds, VaultCollections.asList("project_manager__c", "owner__v")
+ *    );
+ *    String projectManager = roles.getFirstUser(docId, "project_manager__c");
+ */
+
+@UserDefinedClassInfo
+public class DocumentRoleResolver {
+
+    public static final int CHUNK_SIZE = 500;
+
+    /**
+     * Return the users in the roles on the document versions, keyed by document version ID.
+     * @param docVersionIds - List<String>.  Document version ID's, e.g. "123_1_0".
+     * @param roleNames - Collection<String>.  Api names of the roles.
+     * @return DocumentRoles
+     */
+    public static DocumentRoles forVersions(List<String> docVersionIds, Collection<String> roleNames) {
+
+      DocumentService documentService = ServiceLocator.locate(DocumentService.class);
+      DocumentRoleService documentRoleService = ServiceLocator.locate(DocumentRoleService.class);
+
+      DocumentRoles documentRoles = new DocumentRoles();
+
+      for (int start = 0; start < docVersionIds.size(); start += CHUNK_SIZE) {
+
+        List<String> chunkIds = docVersionIds.subList(start, Math.min(start + CHUNK_SIZE, docVersionIds.size()));
+        List<DocumentVersion> chunk = VaultCollections.newList();
+        for (String docVersionId : chunkIds) {
+          chunk.add(documentService.newVersionWithId(docVersionId));
+        }
+
+        for (String roleName : roleNames) {
+          GetDocumentRolesResponse rolesResponse = documentRoleService.getDocumentRoles(chunk, roleName);
+          for (int i = 0; i < chunk.size(); i++) {
+            DocumentRole documentRole = rolesResponse.getDocumentRole(chunk.get(i));
+            if (documentRole != null) {
+              documentRoles.addUsers(chunkIds.get(i), roleName, documentRole.getUsers());
+            }
+          }
+        }
+      }
+
+      return documentRoles;
+    }
+
+    /**
+     * Return the users in the roles on the documents, keyed by document ID.
+     * @param docIds - List<String>.  Document ID's, e.g. from LookupCoalescer.numericKey().
+     * @param roleNames - Collection<String>.  Api names of the roles.
+     * @return DocumentRoles
+     */
+    public static DocumentRoles forDocuments(List<String> docIds, Collection<String> roleNames) {
+
+      DocumentRoles documentRoles = new DocumentRoles();
+
+      if (docIds.isEmpty() || roleNames.isEmpty()) {
+        return documentRoles;
+      }
+
+      // the rendered query keeps QueryUtil.CONTAINS_LIST for queryContains() to fill in
+      String query = VqlTemplate.get(
+        "select document_id, role_name__sys, user__sys" +
+        "  from doc_role__sys" +
+        " where role_name__sys contains :roleNames" +
+        "   and document_id contains " + QueryUtil.CONTAINS_LIST +
+        " order by document_id, role_name__sys, user__sys"
+      ).setIdList("roleNames", roleNames).render();
+
+      ContainsQuery containsQuery = QueryUtil.queryContains(query, docIds).numericValues();
+      while (containsQuery.hasNext()) {
+        QueryExecutionResult result = containsQuery.next();
+        String userId = result.getValue("user__sys", ValueType.STRING);
+        if (userId != null) {
+          documentRoles.addUser(
+            LookupCoalescer.numericKey(result.getValue("document_id", ValueType.NUMBER)),
+            result.getValue("role_name__sys", ValueType.STRING),
+            userId
+          );
+        }
+      }
+
+      return documentRoles;
+    }
+}
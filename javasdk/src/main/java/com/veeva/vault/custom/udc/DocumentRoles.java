@@ -0,0 +1,67 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The users in one or more roles on one or more documents, as resolved by DocumentRoleResolver.  Documents
+ * are identified by the key they were resolved with: the document version ID, or the document ID.
+ */
+
+@UserDefinedClassInfo
+public class DocumentRoles {
+
+    private Map<String, Map<String, List<String>>> users;   // document key -> role name -> user ID's
+
+    DocumentRoles() {
+      this.users = VaultCollections.newMap();
+    }
+
+    void addUser(String documentKey, String roleName, String userId) {
+      this.usersInRole(documentKey, roleName).add(userId);
+    }
+
+    void addUsers(String documentKey, String roleName, List<String> userIds) {
+      this.usersInRole(documentKey, roleName).addAll(userIds);
+    }
+
+    /**
+     * Return the ID's of the users in the role on the document, or an empty list if there are none.
+     * @param documentKey - String.  Document version ID or document ID, as passed to DocumentRoleResolver.
+     * @param roleName - String.  Api name of the role.
+     * @return List<String>
+     */
+    public List<String> getUsers(String documentKey, String roleName) {
+      Map<String, List<String>> roles = this.users.get(documentKey);
+      List<String> userIds = roles == null ? null : roles.get(roleName);
+      return userIds == null ? VaultCollections.newList() : userIds;
+    }
+
+    /**
+     * Return the ID of the first user in the role on the document, or null if there is none.
+     * @param documentKey - String.  Document version ID or document ID, as passed to DocumentRoleResolver.
+     * @param roleName - String.  Api name of the role.
+     * @return String or null
+     */
+    public String getFirstUser(String documentKey, String roleName) {
+      List<String> userIds = this.getUsers(documentKey, roleName);
+      return userIds.isEmpty() ? null : userIds.get(0);
+    }
+
+    private List<String> usersInRole(String documentKey, String roleName) {
+      Map<String, List<String>> roles = this.users.get(documentKey);
+      if (roles == null) {
+        roles = VaultCollections.newMap();
+        this.users.put(documentKey, roles);
+      }
+      List<String> userIds = roles.get(roleName);
+      if (userIds == null) {
+        userIds = VaultCollections.newList();
+        roles.put(roleName, userIds);
+      }
+      return userIds;
+    }
+}
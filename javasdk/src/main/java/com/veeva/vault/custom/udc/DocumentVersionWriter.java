@@ -0,0 +1,146 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.document.DocumentService;
+import com.veeva.vault.sdk.api.document.DocumentVersion;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects field updates for many document versions, drops the updates whose new value equals the value
+ * already queried, and saves the remaining documents in chunks of at most chunkSize documents (default
+ * DEFAULT_CHUNK_SIZE).  A document with no changed field is not saved at all.
+ *
+ * Example usage:
+ *
+ *    DocumentVersionWriter writer = new DocumentVersionWriter();
+ *    while (iter.hasNext()) {
+ *      ...
+ *      writer.setValue(versionId, "submission_date__c", currentDate, submissionDate);
+ *    }
+ *    writer.save();
+ *    logger.info(writer.toString());   // e.g. "Documents: 3 updated, 47 skipped (unchanged), 1 chunk(s)"
+ *
+ * Values are compared as by TrackedRecord: Numbers by value, other values with equals(), so a
+ * multi-value field (List) is unchanged only if it has the same values in the same order.
+ */
+
+@UserDefinedClassInfo
+public class DocumentVersionWriter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private List<String> versionIds;                         // documents, in the order first seen
+    private Set<String> seenVersionIds;                      // the same documents, for lookups
+    private Map<String, DocumentVersion> changedVersions;   // documents with at least one changed field
+
+    private int updatedCount;
+    private int skippedCount;
+    private int chunkCount;
+
+    public DocumentVersionWriter() {
+      this.versionIds = VaultCollections.newList();
+      this.seenVersionIds = VaultCollections.newSet();
+      this.changedVersions = VaultCollections.newMap();
+      this.updatedCount = 0;
+      this.skippedCount = 0;
+      this.chunkCount = 0;
+    }
+
+    public DocumentVersionWriter setChunkSize(int chunkSize) {
+      this.chunkSize = chunkSize;
+      return this;
+    }
+
+    /**
+     * Set a field on a document version, unless the new value equals the current value.
+     * @param docVersionId - String.  Document version ID.
+     * @param fieldName - String.
+     * @param currentValue - the field's value as queried (may be null).
+     * @param newValue - the value to save (may be null).
+     * @return this DocumentVersionWriter
+     */
+    public DocumentVersionWriter setValue(String docVersionId, String fieldName, Object currentValue, Object newValue) {
+
+      if (this.seenVersionIds.add(docVersionId)) {
+        this.versionIds.add(docVersionId);
+      }
+
+      if (TrackedRecord.sameValue(currentValue, newValue)) {
+        return this;
+      }
+
+      DocumentVersion documentVersion = this.changedVersions.get(docVersionId);
+      if (documentVersion == null) {
+        DocumentService documentService = ServiceLocator.locate(DocumentService.class);
+        documentVersion = documentService.newVersionWithId(docVersionId);
+        this.changedVersions.put(docVersionId, documentVersion);
+      }
+      documentVersion.setValue(fieldName, newValue);
+
+      return this;
+    }
+
+    /**
+     * Save the documents with at least one changed field, in chunks.  The updated and skipped counts are
+     * added to the counts of earlier saves.
+     */
+    public void save() {
+
+      List<DocumentVersion> chunk = VaultCollections.newList();
+
+      for (String docVersionId : this.versionIds) {
+        DocumentVersion documentVersion = this.changedVersions.get(docVersionId);
+        if (documentVersion == null) {
+          this.skippedCount++;
+          continue;
+        }
+        chunk.add(documentVersion);
+        if (chunk.size() == this.chunkSize) {
+          this.saveChunk(chunk);
+          chunk = VaultCollections.newList();
+        }
+      }
+      if (chunk.size() > 0) {
+        this.saveChunk(chunk);
+      }
+
+      this.versionIds.clear();
+      this.seenVersionIds.clear();
+      this.changedVersions.clear();
+    }
+
+    public int getUpdatedCount() {
+      return this.updatedCount;
+    }
+
+    /**
+     * Return the number of documents that were not saved because no field changed.
+     * @return int
+     */
+    public int getSkippedCount() {
+      return this.skippedCount;
+    }
+
+    public int getChunkCount() {
+      return this.chunkCount;
+    }
+
+    @Override
+    public String toString() {
+      return "Documents: " + this.updatedCount + " updated, " + this.skippedCount + " skipped (unchanged), " +
+        this.chunkCount + " chunk(s)";
+    }
+
+    private void saveChunk(List<DocumentVersion> chunk) {
+      Util.saveDocumentVersions(chunk);
+      this.updatedCount += chunk.size();
+      this.chunkCount++;
+    }
+}
@@ -16,4 +16,5 @@ public class ErrorType {
     public static final String OPERATION_DENIED = "OPERATION_DENIED";
     public static final String DELETION_DENIED = "DELETION_DENIED";
     public static final String ACTION_DENIED = "ACTION_DENIED";
+    public static final String API_LIMIT_EXCEEDED = "API_LIMIT_EXCEEDED";
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/**
+ * A fixed-size histogram of long values.  The buckets are defined by an ascending array of inclusive
+ * upper bounds; values greater than the last bound are counted in an overflow bucket.  Recording a
+ * value does not allocate, and the memory used does not grow with the number of values recorded.
+ *
+ * Example usage:
+ *
+ *    Histogram elapsed = Histogram.forMillis();
+ *    elapsed.record(elapsedMillis);
+ *    ...
+ *    logger.info("elapsed: " + elapsed);   // e.g. "n=12 sum=340 max=120 p50<=20 p95<=200 [<=10:5 <=20:2 ...]"
+ */
+
+@UserDefinedClassInfo
+public class Histogram {
+
+    private static final long[] MILLIS_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+    private static final long[] ROWS_BOUNDS = {0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 5000};
+
+    private long[] bounds;
+    private long[] counts;   // counts[bounds.length] is the overflow bucket
+
+    private long count;
+    private long sum;
+    private long min;
+    private long max;
+
+    /**
+     * Histogram constructor.
+     * @param bounds - long[].  Ascending, inclusive upper bounds of the buckets.
+     */
+    public Histogram(long[] bounds) {
+      this.bounds = bounds;
+      this.counts = new long[bounds.length + 1];
+      this.count = 0;
+      this.sum = 0;
+      this.min = Long.MAX_VALUE;
+      this.max = Long.MIN_VALUE;
+    }
+
+    /**
+     * Return a Histogram with buckets suited to elapsed times in milliseconds (1ms to 10s).
+     * @return Histogram
+     */
+    public static Histogram forMillis() {
+      return new Histogram(MILLIS_BOUNDS);
+    }
+
+    /**
+     * Return a Histogram with buckets suited to row counts (0 to 5000).
+     * @return Histogram
+     */
+    public static Histogram forRows() {
+      return new Histogram(ROWS_BOUNDS);
+    }
+
+    public void record(long value) {
+      int bucket = 0;
+      while (bucket < this.bounds.length && value > this.bounds[bucket]) {
+        bucket++;
+      }
+      this.counts[bucket]++;
+      this.count++;
+      this.sum += value;
+      if (value < this.min) {
+        this.min = value;
+      }
+      if (value > this.max) {
+        this.max = value;
+      }
+    }
+
+    /**
+     * Add the values recorded in another Histogram with the same bounds to this Histogram.
+     * @param other - Histogram
+     */
+    public void merge(Histogram other) {
+      for (int i = 0; i < this.counts.length; i++) {
+        this.counts[i] += other.counts[i];
+      }
+      this.count += other.count;
+      this.sum += other.sum;
+      if (other.min < this.min) {
+        this.min = other.min;
+      }
+      if (other.max > this.max) {
+        this.max = other.max;
+      }
+    }
+
+    public long getCount() {
+      return this.count;
+    }
+
+    public long getSum() {
+      return this.sum;
+    }
+
+    public long getMin() {
+      return this.count == 0 ? 0 : this.min;
+    }
+
+    public long getMax() {
+      return this.count == 0 ? 0 : this.max;
+    }
+
+    public long[] getBounds() {
+      return this.bounds;
+    }
+
+    /**
+     * Return the bucket counts.  The last entry is the count of values greater than the last bound.
+     * @return long[]
+     */
+    public long[] getBucketCounts() {
+      return this.counts;
+    }
+
+    /**
+     * Return the upper bound of the bucket containing the given percentile, or the maximum recorded
+     * value if the percentile falls in the overflow bucket.
+     * @param percentile - int.  1 to 100.
+     * @return long
+     */
+    public long getPercentile(int percentile) {
+      if (this.count == 0) {
+        return 0;
+      }
+      long target = (this.count * percentile + 99) / 100;
+      long seen = 0;
+      for (int i = 0; i < this.bounds.length; i++) {
+        seen += this.counts[i];
+        if (seen >= target) {
+          return Math.min(this.bounds[i], this.max);
+        }
+      }
+      return this.max;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder(120);
+      sb
+        .append("n=").append(this.count)
+        .append(" sum=").append(this.sum)
+        .append(" max=").append(this.getMax())
+        .append(" p50<=").append(this.getPercentile(50))
+        .append(" p95<=").append(this.getPercentile(95))
+        .append(" [");
+      boolean first = true;
+      for (int i = 0; i < this.counts.length; i++) {
+        if (this.counts[i] == 0) {
+          continue;
+        }
+        if (!first) {
+          sb.append(' ');
+        }
+        if (i < this.bounds.length) {
+          sb.append("<=").append(this.bounds[i]);
+        } else {
+          sb.append('>').append(this.bounds[this.bounds.length - 1]);
+        }
+        sb.append(':').append(this.counts[i]);
+        first = false;
+      }
+      sb.append(']');
+      return sb.toString();
+    }
+}
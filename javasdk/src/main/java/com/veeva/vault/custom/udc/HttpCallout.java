@@ -9,17 +9,45 @@ import com.veeva.vault.sdk.api.json.JsonData;
 import com.veeva.vault.sdk.api.json.JsonValueType;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  *  Wrapper for HttpService, to make it easy to use the service.
  *
  *  Can make requests with a Connection, or local requests without.
+ *
+ *  Transient failures of idempotent requests are retried at once, a limited number of times; Vault API
+ *  limit errors are not retried, and nothing waits in-process.  The Vault
+ *  API limits remaining are reported in each HttpResult and by getBurstLimitRemaining/getDailyLimitRemaining,
+ *  so that callers making many calls can stop early and leave the rest for the next run; see requestJson.
+ *
+ *  Response status codes and bodies are logged at debug level; bodies are truncated and sampled (see
+ *  setMaxLoggedBodyLength and setBodyLogSampleRate).  Errors are logged at info/error level.
+ *
+ *  While HttpMetrics is enabled, the latency, status code and size of each attempt, and the retries and
+ *  outcome of each call, are recorded per endpoint.
  */
 
 @UserDefinedClassInfo
 public class HttpCallout {
 
+  // Response bodies are logged at debug level only, truncated to this many characters...
+  public static final int DEFAULT_MAX_LOGGED_BODY_LENGTH = 2000;
+  // ...and only for one in this many responses in the request.  Error messages are always logged.
+  public static final int DEFAULT_BODY_LOG_SAMPLE_RATE = 10;
+
+  public static final int DEFAULT_MAX_RETRIES = 1;
+
+  // Callers making many calls should stop when fewer than this many calls remain in the burst window
+  public static final int BURST_LIMIT_LOW_WATERMARK = 50;
+
+  private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+
   private String connectionName;
+  private int maxRetries = DEFAULT_MAX_RETRIES;
+  private boolean idempotent = false;
+  private int maxLoggedBodyLength = DEFAULT_MAX_LOGGED_BODY_LENGTH;
+  private int bodyLogSampleRate = DEFAULT_BODY_LOG_SAMPLE_RATE;
 
   public HttpCallout() {
     this.connectionName = null;
@@ -29,19 +57,154 @@ public class HttpCallout {
     this.connectionName = connectionName;
   }
 
+  /**
+   * Set the maximum number of characters of a response body written to the debug log.
+   * @param maxLoggedBodyLength - int
+   * @return this HttpCallout
+   */
+  public HttpCallout setMaxLoggedBodyLength(int maxLoggedBodyLength) {
+    this.maxLoggedBodyLength = maxLoggedBodyLength;
+    return this;
+  }
+
+  /**
+   * Log the body of one in every bodyLogSampleRate responses (1 logs every response).
+   * @param bodyLogSampleRate - int
+   * @return this HttpCallout
+   */
+  public HttpCallout setBodyLogSampleRate(int bodyLogSampleRate) {
+    this.bodyLogSampleRate = bodyLogSampleRate;
+    return this;
+  }
+
   /**
    * Make an HTTP request that returns JSON.
    *
+   * For idempotent requests, transient failures (HTTP 5xx and failed connections) are retried at once, up to
+   * maxRetries times; there is no backoff, since the SDK cannot sleep.  Vault API limit errors (HTTP 429 and
+   * API_LIMIT_EXCEEDED) are not retried: the limit window has not reset yet, so they are returned to the
+   * caller, which should stop (see isBurstLimitLow).  Nothing is retried once the daily limit is exhausted.  HttpResult.getRetryCount() reports
+   * the retries made, and HttpResult.getBurstLimitRemaining()/getDailyLimitRemaining() the limits remaining.
+   *
+   * If HttpMetrics is enabled, each attempt and the outcome of the call are recorded in it.
+   *
    * @param method - HttpMethod
    * @param path   - String. url path
    * @param params - List.
    */
   public HttpResult requestJson(HttpMethod method, String path, List<HttpParam> params, Logger logger) {
 
+    HttpLimitTracker limitTracker = HttpLimitTracker.get();
+    HttpMetrics metrics = HttpMetrics.get();
+    String methodName = String.valueOf(method);
+    int retryCount = 0;
+
+    while (true) {
+
+      long startMillis = Util.currentTimeMillis();
+      HttpResult httpResult = this.send(method, path, params, logger, limitTracker, metrics != null);
+      httpResult.setRetryCount(retryCount);
+      if (metrics != null) {
+        metrics.recordAttempt(
+          methodName, path, httpResult.getStatusCode(), Util.currentTimeMillis() - startMillis, httpResult.getResponseSize()
+        );
+      }
+
+      if (!httpResult.isError() || !httpResult.isRetryable() || retryCount >= this.maxRetries) {
+        return this.complete(httpResult, metrics, methodName, path);
+      }
+
+      if (limitTracker.getDailyRemaining() == 0) {
+        logger.info("Not retrying " + method + " " + path + ": the Vault API daily limit is exhausted");
+        return this.complete(httpResult, metrics, methodName, path);
+      }
+
+      retryCount++;
+      limitTracker.recordRetry();
+      int attempt = retryCount;
+      logger.info(() -> "Retrying " + method + " " + path + " (retry " + attempt + " of " + this.maxRetries + ") after " +
+        httpResult.getStatusCode() + " " + httpResult.getErrorType());
+    }
+  }
+
+  /**
+   * Set the maximum number of retries of a transient failure (default 1).  0 disables retries.  Retries are
+   * not delayed, so keep this small.
+   * @param maxRetries - int
+   * @return this HttpCallout
+   */
+  public HttpCallout setMaxRetries(int maxRetries) {
+    this.maxRetries = maxRetries;
+    return this;
+  }
+
+  /**
+   * Declare that repeating the request is safe, so that HTTP 5xx responses and failed connections are
+   * retried.  GET requests are always treated as idempotent.
+   * @param idempotent - boolean
+   * @return this HttpCallout
+   */
+  public HttpCallout setIdempotent(boolean idempotent) {
+    this.idempotent = idempotent;
+    return this;
+  }
+
+  /**
+   * Return the number of retries made by all HttpCallouts in the current request.
+   * @return int
+   */
+  public static int getRequestRetryCount() {
+    return HttpLimitTracker.get().getRetryCount();
+  }
+
+  /**
+   * Return the Vault API calls remaining in the burst window, as reported by the most recent response in
+   * the current request, or -1 if none has been reported.
+   * @return int
+   */
+  public static int getBurstLimitRemaining() {
+    return HttpLimitTracker.get().getBurstRemaining();
+  }
+
+  /**
+   * Return the Vault API calls remaining today, as reported by the most recent response in the current
+   * request, or -1 if none has been reported.
+   * @return int
+   */
+  public static int getDailyLimitRemaining() {
+    return HttpLimitTracker.get().getDailyRemaining();
+  }
+
+  /**
+   * Return true if the burst limit remainder is known and below BURST_LIMIT_LOW_WATERMARK, in which case a
+   * caller making many calls should stop and leave the rest of its work for the next run.
+   * @return boolean
+   */
+  public static boolean isBurstLimitLow() {
+    int remaining = getBurstLimitRemaining();
+    return remaining >= 0 && remaining < BURST_LIMIT_LOW_WATERMARK;
+  }
+
+  // Record the outcome of the call in the HttpMetrics, if enabled.
+  private HttpResult complete(HttpResult httpResult, HttpMetrics metrics, String methodName, String path) {
+    if (metrics != null) {
+      metrics.recordCall(methodName, path, httpResult.getRetryCount(), httpResult.isError());
+    }
+    return httpResult;
+  }
+
+  // Make one attempt at the request.  If measure is true, the size of the response is set in the result.
+  private HttpResult send(
+    HttpMethod method, String path, List<HttpParam> params, Logger logger, HttpLimitTracker limitTracker,
+    boolean measure
+  ) {
+
     HttpService httpService = ServiceLocator.locate(HttpService.class);
 
     HttpResult httpResult = new HttpResult();
 
+    boolean idempotent = this.idempotent || method == HttpMethod.GET;
+
     HttpRequest request;
 
     if (this.connectionName == null) {
@@ -67,10 +230,18 @@ public class HttpCallout {
     httpService.send(request, HttpResponseBodyValueType.JSONDATA)
       .onSuccess(httpResponse -> {
         int responseCode = httpResponse.getHttpStatusCode();
-        logger.info("RESPONSE: " + responseCode);
+        logger.debug(() -> "RESPONSE: " + responseCode);
+        httpResult.setStatusCode(responseCode);
+        limitTracker.update(httpResponse.getHeaders(), logger);
+        setLimitRemaining(httpResult, httpResponse.getHeaders());
 
         JsonData response = httpResponse.getResponseBody();
-        logger.info("RESPONSE: " + response);
+        if (measure) {
+          httpResult.setResponseSize(responseSize(httpResponse.getHeaders()));
+        }
+        if (logger.isEnabled(Logger.DEBUG) && HttpLogSampler.sample(this.bodyLogSampleRate)) {
+          logger.debug("RESPONSE: " + this.truncate(String.valueOf(response)));
+        }
 
         if (response.isValidJson()) {
           String responseStatus = response.getJsonObject().getValue("responseStatus", JsonValueType.STRING);
@@ -94,17 +265,50 @@ public class HttpCallout {
         }
       })
       .onError(httpOperationError -> {
-        int responseCode = httpOperationError.getHttpResponse().getHttpStatusCode();
+        HttpResponse<String> httpResponse = httpOperationError.getHttpResponse();
+        int responseCode = httpResponse == null ? 0 : httpResponse.getHttpStatusCode();
         logger.info("RESPONSE: " + responseCode);
         logger.info(httpOperationError.getMessage());
-        logger.info(httpOperationError.getHttpResponse().getResponseBody());
+        if (httpResponse != null) {
+          logger.debug(() -> this.truncate(String.valueOf(httpResponse.getResponseBody())));
+          limitTracker.update(httpResponse.getHeaders(), logger);
+          setLimitRemaining(httpResult, httpResponse.getHeaders());
+          if (measure) {
+            httpResult.setResponseSize(responseSize(httpResponse.getHeaders()));
+          }
+        }
+        httpResult.setStatusCode(responseCode);
         httpResult.setError(ErrorType.OPERATION_FAILED, httpOperationError.getMessage());
+        // not a 429: the burst window has not reset yet, so a retry would fail again and use up another call
+        httpResult.setRetryable(idempotent && (responseCode == 0 || responseCode >= 500));
       })
       .execute();
 
     return httpResult;
   }
 
+  // The Content-Length of the response, or -1 if not reported (e.g. a chunked response).  The body is not
+  // serialized to measure it.
+  private static long responseSize(Map<String, List<String>> headers) {
+    return headers == null ? -1 : HttpLimitTracker.headerValue(headers, CONTENT_LENGTH_HEADER);
+  }
+
+  private static void setLimitRemaining(HttpResult httpResult, Map<String, List<String>> headers) {
+    if (headers != null) {
+      httpResult.setLimitRemaining(
+        HttpLimitTracker.headerValue(headers, HttpLimitTracker.BURST_LIMIT_HEADER),
+        HttpLimitTracker.headerValue(headers, HttpLimitTracker.DAILY_LIMIT_HEADER)
+      );
+    }
+  }
+
+  private String truncate(String body) {
+    if (body == null || body.length() <= this.maxLoggedBodyLength) {
+      return body;
+    }
+    return body.substring(0, this.maxLoggedBodyLength) + "... (" + body.length() + " characters)";
+  }
+
   public HttpResult requestJson(HttpMethod method, String path, Logger logger) {
     List<HttpParam> params = VaultCollections.newList();
     return this.requestJson(method, path, params, logger);
@@ -0,0 +1,146 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The statistics that HttpMetrics collects for one endpoint (HTTP method + path template): the number of
+ * calls and attempts, a histogram of elapsed times per attempt (ms), the count of each response status
+ * code, a histogram of response sizes (from Content-Length; responses without one are counted in
+ * getUnsizedResponses), and the number of retries and of failed calls.
+ *
+ * A call is one HttpCallout.requestJson(); it makes 1 + retries attempts.
+ */
+
+@UserDefinedClassInfo
+public class HttpEndpointMetrics {
+
+    private static final long[] SIZE_BOUNDS = {1024, 4096, 16384, 65536, 262144, 1048576, 4194304};
+
+    private String method;
+    private String pathTemplate;
+
+    private long calls;
+    private long attempts;
+    private long retries;
+    private long errors;
+    private Histogram elapsedMillis;
+    private Histogram responseSizes;
+    private long unsizedResponses;
+    private Map<Integer, Long> statusCounts;
+
+    HttpEndpointMetrics(String method, String pathTemplate) {
+      this.method = method;
+      this.pathTemplate = pathTemplate;
+      this.calls = 0;
+      this.attempts = 0;
+      this.retries = 0;
+      this.errors = 0;
+      this.elapsedMillis = Histogram.forMillis();
+      this.responseSizes = new Histogram(SIZE_BOUNDS);
+      this.unsizedResponses = 0;
+      this.statusCounts = VaultCollections.newMap();
+    }
+
+    void recordAttempt(int statusCode, long elapsed, long responseSize) {
+      this.attempts++;
+      this.elapsedMillis.record(elapsed);
+      if (responseSize >= 0) {
+        this.responseSizes.record(responseSize);
+      } else {
+        this.unsizedResponses++;
+      }
+      Long count = this.statusCounts.get(statusCode);
+      this.statusCounts.put(statusCode, count == null ? 1L : count + 1);
+    }
+
+    void recordCall(int retryCount, boolean failed) {
+      this.calls++;
+      this.retries += retryCount;
+      if (failed) {
+        this.errors++;
+      }
+    }
+
+    public String getMethod() {
+      return this.method;
+    }
+
+    public String getPathTemplate() {
+      return this.pathTemplate;
+    }
+
+    public long getCalls() {
+      return this.calls;
+    }
+
+    public long getAttempts() {
+      return this.attempts;
+    }
+
+    public long getRetries() {
+      return this.retries;
+    }
+
+    /**
+     * Return the number of calls whose final result was an error (HTTP or Vault API error).
+     * @return long
+     */
+    public long getErrors() {
+      return this.errors;
+    }
+
+    public Histogram getElapsedMillis() {
+      return this.elapsedMillis;
+    }
+
+    public Histogram getResponseSizes() {
+      return this.responseSizes;
+    }
+
+    /**
+     * Return the number of attempts whose response size is unknown (no Content-Length, or no response).
+     * @return long
+     */
+    public long getUnsizedResponses() {
+      return this.unsizedResponses;
+    }
+
+    /**
+     * Return the number of attempts per HTTP status code; 0 counts attempts that got no response.
+     * @return Map<Integer, Long>
+     */
+    public Map<Integer, Long> getStatusCounts() {
+      return this.statusCounts;
+    }
+
+    @Override
+    public String toString() {
+      List<Integer> statusCodes = VaultCollections.newList();
+      statusCodes.addAll(this.statusCounts.keySet());
+      statusCodes.sort(Integer::compare);
+
+      StringBuilder sb = new StringBuilder(this.pathTemplate.length() + 300);
+      sb
+        .append("calls=").append(this.calls)
+        .append(" attempts=").append(this.attempts)
+        .append(" retries=").append(this.retries)
+        .append(" errors=").append(this.errors)
+        .append(" totalMs=").append(this.elapsedMillis.getSum())
+        .append(" status={");
+      for (int i = 0; i < statusCodes.size(); i++) {
+        if (i > 0) {
+          sb.append(' ');
+        }
+        sb.append(statusCodes.get(i)).append(':').append(this.statusCounts.get(statusCodes.get(i)));
+      }
+      sb
+        .append("} | ").append(this.method).append(' ').append(this.pathTemplate)
+        .append(" | elapsedMs: ").append(this.elapsedMillis)
+        .append(" | size: ").append(this.responseSizes).append(" unsized=").append(this.unsizedResponses);
+      return sb.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request-scoped record of the Vault API limits reported by the most recent response, and of the retries
+ * HttpCallout made.
+ *
+ * Vault reports the remaining calls in the X-VaultAPI-BurstLimitRemaining (per burst window) and
+ * X-VaultAPI-DailyLimitRemaining response headers.  HttpCallout does not wait for the burst window to
+ * reset: callers that make many calls check the remainder (HttpCallout.getBurstLimitRemaining) and stop
+ * early, leaving the rest of the work for the next run.  A daily remainder below DAILY_LOW_WATERMARK is
+ * logged once per request.
+ */
+
+@UserDefinedClassInfo
+class HttpLimitTracker implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "HttpCallout.limitTracker";
+
+    static final String BURST_LIMIT_HEADER = "X-VaultAPI-BurstLimitRemaining";
+    static final String DAILY_LIMIT_HEADER = "X-VaultAPI-DailyLimitRemaining";
+
+    static final int DAILY_LOW_WATERMARK = 1000;
+
+    private int burstRemaining;     // -1 until reported
+    private int dailyRemaining;     // -1 until reported
+    private boolean dailyWarningLogged;
+    private int retryCount;
+
+    private HttpLimitTracker() {
+      this.burstRemaining = -1;
+      this.dailyRemaining = -1;
+      this.dailyWarningLogged = false;
+      this.retryCount = 0;
+    }
+
+    static HttpLimitTracker get() {
+      HttpLimitTracker limiter = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(HttpLimitTracker.class)
+      );
+      if (limiter == null) {
+        limiter = new HttpLimitTracker();
+        RequestContext.get().setValue(CONTEXT_KEY, limiter);
+      }
+      return limiter;
+    }
+
+    /**
+     * Record the limits reported in the headers of a response.  Headers that are missing are ignored.
+     * @param headers - Map<String, List<String>>.  Response headers (may be null).
+     * @param logger - Logger
+     */
+    void update(Map<String, List<String>> headers, Logger logger) {
+      if (headers == null) {
+        return;
+      }
+      int burst = headerValue(headers, BURST_LIMIT_HEADER);
+      if (burst >= 0) {
+        this.burstRemaining = burst;
+      }
+      int daily = headerValue(headers, DAILY_LIMIT_HEADER);
+      if (daily >= 0) {
+        this.dailyRemaining = daily;
+        if (daily < DAILY_LOW_WATERMARK && !this.dailyWarningLogged) {
+          this.dailyWarningLogged = true;
+          logger.error("Vault API daily limit is low: " + daily + " calls remaining");
+        }
+      }
+    }
+
+    void recordRetry() {
+      this.retryCount++;
+    }
+
+    /**
+     * Return the number of retries made by HttpCallout in the current request.
+     * @return int
+     */
+    int getRetryCount() {
+      return this.retryCount;
+    }
+
+    int getBurstRemaining() {
+      return this.burstRemaining;
+    }
+
+    int getDailyRemaining() {
+      return this.dailyRemaining;
+    }
+
+    // Header names are matched without regard to case.  Returns -1 if the header is missing or not a number.
+    static int headerValue(Map<String, List<String>> headers, String name) {
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        if (header.getKey() != null && header.getKey().equalsIgnoreCase(name) &&
+            header.getValue() != null && !header.getValue().isEmpty()) {
+          try {
+            return Integer.parseInt(header.getValue().get(0).trim());
+          } catch (NumberFormatException e) {
+            return -1;
+          }
+        }
+      }
+      return -1;
+    }
+}
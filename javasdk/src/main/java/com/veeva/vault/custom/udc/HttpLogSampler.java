@@ -0,0 +1,40 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/**
+ * Counts the HTTP responses of the current request, so that HttpCallout can log the body of every Nth
+ * response only.  The counter lives in the RequestContext, since HttpCallout instances are short-lived.
+ */
+
+@UserDefinedClassInfo
+class HttpLogSampler implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "HttpCallout.logSampler";
+
+    private long responseCount;
+
+    private HttpLogSampler() {
+      this.responseCount = 0;
+    }
+
+    /**
+     * Count a response, and return true if it is one of every sampleRate responses (the first included).
+     * @param sampleRate - int.  1 samples every response.
+     * @return boolean
+     */
+    static boolean sample(int sampleRate) {
+      HttpLogSampler sampler = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(HttpLogSampler.class)
+      );
+      if (sampler == null) {
+        sampler = new HttpLogSampler();
+        RequestContext.get().setValue(CONTEXT_KEY, sampler);
+      }
+      return (sampler.responseCount++ % Math.max(sampleRate, 1)) == 0;
+    }
+}
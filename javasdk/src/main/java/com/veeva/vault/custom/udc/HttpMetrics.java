@@ -0,0 +1,205 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request-scoped HTTP endpoint metrics.  When enabled, HttpCallout records, per HTTP method and path
+ * template, the latency of each attempt, the status codes and sizes of the responses, and the retries and
+ * errors of each call (see HttpEndpointMetrics).  The metrics live in the RequestContext and are opt-in:
+ * nothing is recorded until HttpMetrics.enable() has been called in the current request.
+ *
+ * The template of a path is the path without its query string, with the ID's in it (document ID's and
+ * versions, object record ID's, job ID's, query session ID's) replaced by "{id}", so that calls for
+ * different documents or records are counted under one endpoint; an endpoint called many times in one
+ * request is a candidate for a bulk endpoint.  At most MAX_ENDPOINTS endpoints are kept; further endpoints
+ * are counted in a single overflow entry.
+ *
+ * Example usage:
+ *
+ *    HttpMetrics.enable();
+ *    ...
+ *    HttpMetrics.dump(logger);   // at the end of process()
+ */
+
+@UserDefinedClassInfo
+public class HttpMetrics implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "HttpCallout.metrics";
+
+    public static final int MAX_ENDPOINTS = 100;
+
+    private static final String ID_PLACEHOLDER = "{id}";
+    private static final String OVERFLOW_METHOD = "*";
+    private static final String OVERFLOW_TEMPLATE = "(other endpoints)";
+
+    private Map<String, HttpEndpointMetrics> endpoints;
+    private HttpEndpointMetrics overflow;
+
+    private HttpMetrics() {
+      this.endpoints = VaultCollections.newMap();
+      this.overflow = null;
+    }
+
+    /**
+     * Return the HttpMetrics for the current request, or null if metrics have not been enabled.
+     * @return HttpMetrics or null
+     */
+    public static HttpMetrics get() {
+      return RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(HttpMetrics.class)
+      );
+    }
+
+    /**
+     * Enable metrics for the remainder of the current request.  Does nothing if already enabled.
+     */
+    public static void enable() {
+      if (get() == null) {
+        RequestContext.get().setValue(CONTEXT_KEY, new HttpMetrics());
+      }
+    }
+
+    /**
+     * Record one attempt at a request.
+     * @param method - String.  HTTP method.
+     * @param path - String.  Request path, as sent.
+     * @param statusCode - int.  HTTP status code, or 0 if there was no response.
+     * @param elapsedMillis - long.
+     * @param responseSize - long.  Size of the response body (see HttpResult.getResponseSize), or -1 if unknown.
+     */
+    void recordAttempt(String method, String path, int statusCode, long elapsedMillis, long responseSize) {
+      this.endpoint(method, path).recordAttempt(statusCode, elapsedMillis, responseSize);
+    }
+
+    /**
+     * Record the outcome of a call, after its last attempt.
+     * @param method - String.  HTTP method.
+     * @param path - String.  Request path, as sent.
+     * @param retryCount - int.  Retries made.
+     * @param failed - boolean.  True if the final result was an error.
+     */
+    void recordCall(String method, String path, int retryCount, boolean failed) {
+      this.endpoint(method, path).recordCall(retryCount, failed);
+    }
+
+    /**
+     * Return the endpoints recorded in the current request, most total elapsed time first, or an empty list
+     * if metrics are not enabled.
+     * @return List<HttpEndpointMetrics>
+     */
+    public static List<HttpEndpointMetrics> snapshot() {
+      List<HttpEndpointMetrics> snapshot = VaultCollections.newList();
+      HttpMetrics metrics = get();
+      if (metrics != null) {
+        snapshot.addAll(metrics.endpoints.values());
+        if (metrics.overflow != null) {
+          snapshot.add(metrics.overflow);
+        }
+        snapshot.sort((e1, e2) -> Long.compare(e2.getElapsedMillis().getSum(), e1.getElapsedMillis().getSum()));
+      }
+      return snapshot;
+    }
+
+    /**
+     * Return the metrics of one endpoint, or null if it has not been called (or metrics are not enabled).
+     * @param method - String.  HTTP method, e.g. "GET".
+     * @param pathTemplate - String.  Path template, see template().
+     * @return HttpEndpointMetrics or null
+     */
+    public static HttpEndpointMetrics getEndpoint(String method, String pathTemplate) {
+      HttpMetrics metrics = get();
+      return metrics == null ? null : metrics.endpoints.get(method + " " + pathTemplate);
+    }
+
+    /**
+     * Write the endpoints recorded in the current request to the logger, one line per endpoint, most total
+     * elapsed time first, at info level.  Does nothing if metrics are not enabled or no call was made.
+     * @param logger - Logger
+     */
+    public static void dump(Logger logger) {
+      List<HttpEndpointMetrics> snapshot = snapshot();
+      if (snapshot.isEmpty() || !logger.isEnabled(Logger.INFO)) {
+        return;
+      }
+      logger.info("HTTP metrics: " + snapshot.size() + " endpoint(s)");
+      for (HttpEndpointMetrics endpoint : snapshot) {
+        logger.info("HTTP metrics: " + endpoint);
+      }
+    }
+
+    private HttpEndpointMetrics endpoint(String method, String path) {
+      String template = template(path);
+      String key = method + " " + template;
+      HttpEndpointMetrics endpoint = this.endpoints.get(key);
+      if (endpoint == null) {
+        if (this.endpoints.size() >= MAX_ENDPOINTS) {
+          if (this.overflow == null) {
+            this.overflow = new HttpEndpointMetrics(OVERFLOW_METHOD, OVERFLOW_TEMPLATE);
+          }
+          return this.overflow;
+        }
+        endpoint = new HttpEndpointMetrics(method, template);
+        this.endpoints.put(key, endpoint);
+      }
+      return endpoint;
+    }
+
+    /**
+     * Return the template of a request path: the query string removed, and each segment that is an ID
+     * replaced by "{id}".  A segment is an ID if it is a number, an object record ID, or contains a digit
+     * and only letters, digits and '-'.  The API version ("v24.2") and names (which contain '_' or '.')
+     * are kept.  E.g. "/api/v24.2/objects/documents/123/versions/1/0" becomes
+     * "/api/v24.2/objects/documents/{id}/versions/{id}/{id}".
+     * @param path - String.  Request path.
+     * @return String
+     */
+    public static String template(String path) {
+
+      if (path == null) {
+        return "";
+      }
+
+      int queryStart = path.indexOf('?');
+      String basePath = queryStart < 0 ? path : path.substring(0, queryStart);
+
+      String[] segments = basePath.split("/", -1);
+      StringBuilder template = new StringBuilder(basePath.length());
+
+      for (int i = 0; i < segments.length; i++) {
+        if (i > 0) {
+          template.append('/');
+        }
+        boolean isVersion = i > 0 && segments[i - 1].equals("api");
+        template.append(!isVersion && isId(segments[i]) ? ID_PLACEHOLDER : segments[i]);
+      }
+
+      return template.toString();
+    }
+
+    private static boolean isId(String segment) {
+      if (segment.isEmpty()) {
+        return false;
+      }
+      if (IdCodec.isRecordId(segment)) {
+        return true;
+      }
+      boolean hasDigit = false;
+      for (int i = 0; i < segment.length(); i++) {
+        char c = segment.charAt(i);
+        if (Character.isDigit(c)) {
+          hasDigit = true;
+        } else if (!Character.isLetter(c) && c != '-') {
+          return false;
+        }
+      }
+      return hasDigit;
+    }
+}
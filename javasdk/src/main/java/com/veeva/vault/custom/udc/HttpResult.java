@@ -14,10 +14,23 @@ public class HttpResult {
     public String errorMessage;
     public Object data;
 
+    private int statusCode;
+    private boolean retryable;
+    private int retryCount;
+    private long responseSize;
+    private int burstLimitRemaining;
+    private int dailyLimitRemaining;
+
     public HttpResult() {
       this.errorType = null;
       this.errorMessage = null;
       this.data = null;
+      this.statusCode = 0;
+      this.retryable = false;
+      this.retryCount = 0;
+      this.responseSize = -1;
+      this.burstLimitRemaining = -1;
+      this.dailyLimitRemaining = -1;
     }
 
     protected void setError(String errorType, String errorMessage) {
@@ -29,6 +42,79 @@ public class HttpResult {
       this.data = data;
     }
 
+    protected void setStatusCode(int statusCode) {
+      this.statusCode = statusCode;
+    }
+
+    protected void setRetryable(boolean retryable) {
+      this.retryable = retryable;
+    }
+
+    protected void setRetryCount(int retryCount) {
+      this.retryCount = retryCount;
+    }
+
+    protected void setResponseSize(long responseSize) {
+      this.responseSize = responseSize;
+    }
+
+    protected void setLimitRemaining(int burstLimitRemaining, int dailyLimitRemaining) {
+      this.burstLimitRemaining = burstLimitRemaining;
+      this.dailyLimitRemaining = dailyLimitRemaining;
+    }
+
+    /**
+     * Return the HTTP status code of the (last) response, or 0 if there was no response.
+     * @return int
+     */
+    public int getStatusCode() {
+      return this.statusCode;
+    }
+
+    /**
+     * Return true if the error is transient (HTTP 5xx or a failed connection, for an idempotent request), so
+     * that the request may succeed if repeated at once.  Vault API limit errors are not retryable.
+     * @return boolean
+     */
+    public boolean isRetryable() {
+      return this.retryable;
+    }
+
+    /**
+     * Return the number of times the request was retried before this result.
+     * @return int
+     */
+    public int getRetryCount() {
+      return this.retryCount;
+    }
+
+    /**
+     * Return the size of the (last) response body, from its Content-Length header, or -1 if no
+     * Content-Length was reported or the response was not measured.  Responses are measured only while
+     * HttpMetrics is enabled.
+     * @return long
+     */
+    public long getResponseSize() {
+      return this.responseSize;
+    }
+
+    /**
+     * Return the Vault API calls remaining in the current burst window, as reported by the (last) response,
+     * or -1 if not reported.  Callers making many calls should stop, or send smaller chunks, when it is low.
+     * @return int
+     */
+    public int getBurstLimitRemaining() {
+      return this.burstLimitRemaining;
+    }
+
+    /**
+     * Return the Vault API calls remaining today, as reported by the (last) response, or -1 if not reported.
+     * @return int
+     */
+    public int getDailyLimitRemaining() {
+      return this.dailyLimitRemaining;
+    }
+
     public boolean isError() {
       return errorType != null || errorMessage != null;
     }
@@ -0,0 +1,109 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/**
+ * Packs Vault document version ID's into primitive longs, so that large ID collections can be held in a
+ * LongIdMap instead of String-keyed maps, and compared without String hashing.
+ *
+ *   - Document version ID's, "<docid>_<major>_<minor>" (e.g. "10325_1_0"), pack to
+ *     docid << 32 | major << 16 | minor.  Packing is lossless for docid < 2^31 and major, minor < 2^16.
+ *
+ * isRecordId() recognizes object record ID's, e.g. "V4400000000A001".
+ *
+ * Parsing scans the characters of the ID and does not allocate.
+ */
+
+@UserDefinedClassInfo
+public class IdCodec {
+
+    public static final int RECORD_ID_LENGTH = 15;
+
+    /**
+     * Pack a document version ID, e.g. "10325_1_0".
+     * @param docVersionId - String
+     * @return long
+     */
+    public static long packVersionId(String docVersionId) {
+
+      long[] parts = {0, 0, 0};
+      int part = 0;
+      boolean digitSeen = false;
+
+      for (int i = 0; i < docVersionId.length(); i++) {
+        char c = docVersionId.charAt(i);
+        if (c >= '0' && c <= '9') {
+          parts[part] = parts[part] * 10 + (c - '0');
+          digitSeen = true;
+        } else if (c == '_' && digitSeen && part < 2) {
+          part++;
+          digitSeen = false;
+        } else {
+          throw invalid("document version ID", docVersionId);
+        }
+      }
+
+      if (part != 2 || !digitSeen || parts[0] > Integer.MAX_VALUE || parts[1] > 0xFFFF || parts[2] > 0xFFFF) {
+        throw invalid("document version ID", docVersionId);
+      }
+
+      return (parts[0] << 32) | (parts[1] << 16) | parts[2];
+    }
+
+    /**
+     * Return the document version ID String for a packed version ID.
+     * @param packedVersionId - long
+     * @return String
+     */
+    public static String unpackVersionId(long packedVersionId) {
+      return new StringBuilder(20)
+        .append(docId(packedVersionId)).append('_')
+        .append(major(packedVersionId)).append('_')
+        .append(minor(packedVersionId))
+        .toString();
+    }
+
+    public static int docId(long packedVersionId) {
+      return (int) (packedVersionId >>> 32);
+    }
+
+    public static int major(long packedVersionId) {
+      return (int) ((packedVersionId >>> 16) & 0xFFFF);
+    }
+
+    public static int minor(long packedVersionId) {
+      return (int) (packedVersionId & 0xFFFF);
+    }
+
+    /**
+     * Return true if the String has the form of an object record ID: 15 characters, digits and upper-case letters.
+     * @param recordId - String
+     * @return boolean
+     */
+    public static boolean isRecordId(String recordId) {
+      if (recordId == null || recordId.length() != RECORD_ID_LENGTH) {
+        return false;
+      }
+      for (int i = 0; i < RECORD_ID_LENGTH; i++) {
+        if (digit(recordId.charAt(i)) < 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static int digit(char c) {
+      if (c >= '0' && c <= '9') {
+        return c - '0';
+      }
+      if (c >= 'A' && c <= 'Z') {
+        return c - 'A' + 10;
+      }
+      return -1;
+    }
+
+    private static RollbackException invalid(String what, String value) {
+      return new RollbackException(ErrorType.OPERATION_FAILED, "Invalid " + what + ": " + value);
+    }
+}
@@ -1,20 +1,63 @@
 package com.veeva.vault.custom.udc;
 
 import com.veeva.vault.sdk.api.core.LogService;
+import com.veeva.vault.sdk.api.core.RollbackException;
 import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
 import com.veeva.vault.sdk.api.job.JobLogger;
 
+import java.util.function.Supplier;
+
 /**
  * Generic logger to support LogService and JobLogger.  This is helpful when the code that
  * needs to log messages is not aware of the context in which it is executing (Job vs. Trigger/Action, etc.).
+ *
+ * Messages below the logger's minimum level (default INFO) are discarded.  To avoid building a message
+ * that will be discarded, pass a Supplier, which is only called if the level is enabled:
+ *
+ *    logger.debug(() -> "RESPONSE: " + response);
+ *
+ * or test the level first with isEnabled().
+ *
+ * Buffered mode (see setBuffered) collects messages in one FIFO queue per level, at most capacity messages
+ * in all, and writes them, in the order they were logged, to the JobLogger and LogService as one block of lines per flush, instead of one call per
+ * message.  The buffer is flushed when it holds flushThreshold messages (0 = only on flush()), and by
+ * flush(), which must be called at the end of the task.  If the buffer is full, the oldest message of the
+ * lowest level is dropped, without a scan of the buffer (an incoming message of a lower level than all buffered messages is dropped
+ * instead); error messages are never dropped.  Drops are counted, and reported in the next block.
+ * LogService gets one block per level (see flush).  Error messages are also written to LogService
+ * immediately, so the LogService blocks leave them out.
+ *
+ *    Logger logger = new Logger(jobProcessContext.getJobLogger()).setBuffered(Logger.DEFAULT_BUFFER_CAPACITY, 0);
+ *    ...
+ *    logger.flush();   // at the end of process()
  */
 
 @UserDefinedClassInfo
 public class Logger {
 
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int ERROR = 2;
+
     private JobLogger jobLogger;
     private LogService logService;
+    private int level = INFO;
+
+    public static final int DEFAULT_BUFFER_CAPACITY = 1000;
+
+    // buffered mode: a ring buffer of messages per level ([level][slot]), with the sequence number of each
+    // message, so that flush() can merge the levels back into the order the messages were logged
+    private String[][] bufferedMessages = null;
+    private long[][] bufferedSeqs = null;
+    private int[] queueHeads = null;
+    private int[] queueSizes = null;
+    private int bufferCapacity = 0;
+    private int bufferSize = 0;     // messages held, all levels
+    private long nextSeq = 0;
+    private int flushThreshold = 0;
+    private long droppedCount = 0;
+    private long droppedSinceFlush = 0;
 
     public Logger(JobLogger jobLogger) {
       this.jobLogger = jobLogger;
@@ -26,25 +69,221 @@ public class Logger {
       this.logService = ServiceLocator.locate(LogService.class);
     }
 
+    /**
+     * Set the minimum level of the messages logged.
+     * @param level - int.  Logger.DEBUG, Logger.INFO or Logger.ERROR.
+     * @return this Logger
+     */
+    public Logger setLevel(int level) {
+      this.level = level;
+      return this;
+    }
+
+    public int getLevel() {
+      return this.level;
+    }
+
+    /**
+     * Return true if messages of the level are logged.
+     * @param level - int.  Logger.DEBUG, Logger.INFO or Logger.ERROR.
+     * @return boolean
+     */
+    public boolean isEnabled(int level) {
+      return level >= this.level;
+    }
+
+    /**
+     * Switch to buffered mode.  Flushes any messages already buffered.
+     * @param capacity - int.  The maximum number of messages held; at least 1.
+     * @param flushThreshold - int.  Flush when this many messages are held; 0 to flush only on flush().
+     * @return this Logger
+     */
+    public Logger setBuffered(int capacity, int flushThreshold) {
+      if (capacity < 1) {
+        throw new RollbackException(ErrorType.OPERATION_FAILED, "Invalid log buffer capacity: " + capacity);
+      }
+      this.flush();
+      this.bufferedMessages = new String[ERROR + 1][capacity];
+      this.bufferedSeqs = new long[ERROR + 1][capacity];
+      this.queueHeads = new int[ERROR + 1];
+      this.queueSizes = new int[ERROR + 1];
+      this.bufferCapacity = capacity;
+      this.bufferSize = 0;
+      this.flushThreshold = flushThreshold;
+      return this;
+    }
+
+    /**
+     * Write the buffered messages as one block, preceded by the number of messages dropped since the
+     * last flush, if any.  LogService gets one block per level, so that each message keeps its level: info
+     * messages with LogService.info, debug messages with LogService.debug; error messages, already written
+     * to LogService by error(), are left out.  Does nothing if the logger is not buffered or the buffer is empty.
+     */
+    public void flush() {
+      if (this.bufferedMessages == null || (this.bufferSize == 0 && this.droppedSinceFlush == 0)) {
+        return;
+      }
+      StringBuilder block = new StringBuilder(this.bufferSize * 80);
+      StringBuilder infoBlock = new StringBuilder(this.bufferSize * 80);
+      StringBuilder debugBlock = new StringBuilder();
+      if (this.droppedSinceFlush > 0) {
+        appendLine(block, "(" + this.droppedSinceFlush + " low-priority log messages dropped)");
+        appendLine(infoBlock, "(" + this.droppedSinceFlush + " low-priority log messages dropped)");
+      }
+      for (int i = 0; i < this.bufferSize; i++) {
+        // the next message is the oldest of the heads of the levels' queues
+        int level = -1;
+        for (int l = DEBUG; l <= ERROR; l++) {
+          if (this.queueSizes[l] > 0 && (level < 0 || this.headSeq(l) < this.headSeq(level))) {
+            level = l;
+          }
+        }
+        String message = this.poll(level);
+        appendLine(block, message);
+        if (level == INFO) {
+          appendLine(infoBlock, message);
+        } else if (level == DEBUG) {
+          appendLine(debugBlock, message);
+        }
+      }
+      this.bufferSize = 0;
+      this.droppedSinceFlush = 0;
+
+      if (this.jobLogger != null) {
+        this.jobLogger.log(block.toString());
+      }
+      if (infoBlock.length() > 0) {
+        this.logService.info(infoBlock.toString());
+      }
+      if (debugBlock.length() > 0) {
+        this.logService.debug(debugBlock.toString());
+      }
+    }
+
+    /**
+     * Return the number of messages dropped from the buffer because it was full.
+     * @return long
+     */
+    public long getDroppedCount() {
+      return this.droppedCount;
+    }
+
     public void info(String message) {
+      if (!this.isEnabled(INFO)) {
+        return;
+      }
+      if (this.bufferedMessages != null) {
+        this.buffer(INFO, message);
+        return;
+      }
       if (this.jobLogger != null) {
         this.jobLogger.log(message);
       }
       this.logService.info(message);
     }
 
+    public void info(Supplier<String> message) {
+      if (this.isEnabled(INFO)) {
+        this.info(message.get());
+      }
+    }
+
     public void error(String message) {
+       if (!this.isEnabled(ERROR)) {
+         return;
+       }
+       if (this.bufferedMessages != null) {
+         this.buffer(ERROR, message);
+         this.logService.error(message);
+         return;
+       }
        if (this.jobLogger != null) {
          this.jobLogger.log(message);
        }
        this.logService.error(message);
     }
 
+    public void error(Supplier<String> message) {
+      if (this.isEnabled(ERROR)) {
+        this.error(message.get());
+      }
+    }
+
     public void debug(String message) {
+      if (!this.isEnabled(DEBUG)) {
+        return;
+      }
+      if (this.bufferedMessages != null) {
+        this.buffer(DEBUG, message);
+        return;
+      }
       if (this.jobLogger != null) {
         this.jobLogger.log(message);
       }
       this.logService.debug(message);
     }
 
-}
\ No newline at end of file
+    public void debug(Supplier<String> message) {
+      if (this.isEnabled(DEBUG)) {
+        this.debug(message.get());
+      }
+    }
+
+    private void buffer(int level, String message) {
+
+      if (this.bufferSize == this.bufferCapacity) {
+        // full: drop the oldest message of the lowest level
+        int lowestLevel = DEBUG;
+        while (this.queueSizes[lowestLevel] == 0) {
+          lowestLevel++;
+        }
+        if (lowestLevel == ERROR) {
+          this.flush();       // never drop errors
+        } else if (level < lowestLevel) {
+          this.dropped();     // the incoming message is the lowest priority
+          return;
+        } else {
+          this.poll(lowestLevel);
+          this.bufferSize--;
+          this.dropped();
+        }
+      }
+
+      int slot = (this.queueHeads[level] + this.queueSizes[level]) % this.bufferCapacity;
+      this.bufferedMessages[level][slot] = message;
+      this.bufferedSeqs[level][slot] = this.nextSeq++;
+      this.queueSizes[level]++;
+      this.bufferSize++;
+
+      if (this.flushThreshold > 0 && this.bufferSize >= this.flushThreshold) {
+        this.flush();
+      }
+    }
+
+    // Remove and return the oldest message of the level.  The caller keeps bufferSize up to date.
+    private String poll(int level) {
+      int head = this.queueHeads[level];
+      String message = this.bufferedMessages[level][head];
+      this.bufferedMessages[level][head] = null;
+      this.queueHeads[level] = (head + 1) % this.bufferCapacity;
+      this.queueSizes[level]--;
+      return message;
+    }
+
+    private long headSeq(int level) {
+      return this.bufferedSeqs[level][this.queueHeads[level]];
+    }
+
+    private static void appendLine(StringBuilder block, String line) {
+      if (block.length() > 0) {
+        block.append("\n");
+      }
+      block.append(line);
+    }
+
+    private void dropped() {
+      this.droppedCount++;
+      this.droppedSinceFlush++;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/**
+ * Hashing and sizing for LongIdMap.
+ */
+
+@UserDefinedClassInfo
+class LongIdHash {
+
+    // Spread the bits of a packed ID, whose low bits are often zero (e.g. minor version 0).
+    static int hash(long id) {
+      long h = id * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32));
+    }
+
+    // Return a power-of-two table size that holds expectedSize entries at most half full.
+    static int capacityFor(int expectedSize) {
+      int capacity = 16;
+      while (capacity < expectedSize * 2) {
+        capacity <<= 1;
+      }
+      return capacity;
+    }
+}
@@ -0,0 +1,134 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/**
+ * A map from primitive long ID's (see IdCodec) to values, stored in an open-addressing hash table with
+ * linear probing.  Keys are held in a long[] rather than as boxed Longs or Strings, and lookups do not
+ * allocate.  The table doubles when it is more than half full.  Null values are not supported.
+ */
+
+@UserDefinedClassInfo
+public class LongIdMap<V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 0 marks an empty key slot, so the key 0 is held separately
+    private long[] keys;
+    private Object[] values;
+    private Object zeroValue;
+    private int size;
+
+    public LongIdMap() {
+      this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * LongIdMap constructor.
+     * @param expectedSize - int.  The number of keys expected, so that the table is allocated once.
+     */
+    public LongIdMap(int expectedSize) {
+      int capacity = LongIdHash.capacityFor(expectedSize);
+      this.keys = new long[capacity];
+      this.values = new Object[capacity];
+      this.zeroValue = null;
+      this.size = 0;
+    }
+
+    /**
+     * Set the value for a key, and return the previous value, or null.
+     * @param key - long
+     * @param value - V.  Not null.
+     * @return V or null
+     */
+    public V put(long key, V value) {
+      if (key == 0) {
+        V previous = this.value(this.zeroValue);
+        if (previous == null) {
+          this.size++;
+        }
+        this.zeroValue = value;
+        return previous;
+      }
+      int slot = this.find(key);
+      V previous = this.value(this.values[slot]);
+      this.keys[slot] = key;
+      this.values[slot] = value;
+      if (previous == null) {
+        this.size++;
+        if (this.size * 2 > this.keys.length) {
+          this.rehash(this.keys.length * 2);
+        }
+      }
+      return previous;
+    }
+
+    /**
+     * Return the value for a key, or null if the key is not in the map.
+     * @param key - long
+     * @return V or null
+     */
+    public V get(long key) {
+      if (key == 0) {
+        return this.value(this.zeroValue);
+      }
+      return this.value(this.values[this.find(key)]);
+    }
+
+    public boolean containsKey(long key) {
+      return this.get(key) != null;
+    }
+
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * Return the keys in no particular order.
+     * @return long[]
+     */
+    public long[] keys() {
+      long[] result = new long[this.size];
+      int i = 0;
+      if (this.zeroValue != null) {
+        result[i++] = 0;
+      }
+      for (int slot = 0; slot < this.keys.length; slot++) {
+        if (this.values[slot] != null) {
+          result[i++] = this.keys[slot];
+        }
+      }
+      return result;
+    }
+
+    // The table is an Object[] because Java cannot create a V[]; only put() stores into it, so every
+    // non-null value is a V.
+    @SuppressWarnings("unchecked")
+    private V value(Object value) {
+      return (V) value;
+    }
+
+    // Return the slot holding the key, or the empty slot where it belongs.
+    private int find(long key) {
+      int mask = this.keys.length - 1;
+      int slot = LongIdHash.hash(key) & mask;
+      while (this.values[slot] != null && this.keys[slot] != key) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void rehash(int capacity) {
+      long[] oldKeys = this.keys;
+      Object[] oldValues = this.values;
+      this.keys = new long[capacity];
+      this.values = new Object[capacity];
+      for (int slot = 0; slot < oldKeys.length; slot++) {
+        if (oldValues[slot] != null) {
+          int newSlot = this.find(oldKeys[slot]);
+          this.keys[newSlot] = oldKeys[slot];
+          this.values[newSlot] = oldValues[slot];
+        }
+      }
+    }
+}
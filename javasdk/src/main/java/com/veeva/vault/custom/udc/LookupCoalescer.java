@@ -0,0 +1,177 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces single-key lookups (one key field value -> one value field value) against the same query
+ * into 'contains' queries over many keys.  Instead of one query per key, keys are collected with
+ * request(), and the first get() of a key that has not been resolved yet resolves all pending keys
+ * together, in batches of ContainsQuery.DEFAULT_BATCH_SIZE.  N lookups therefore cost about
+ * N / batchSize queries when the keys are requested up front, e.g. for all records in a trigger.
+ *
+ * Lookups are request-scoped: forQuery() returns the same LookupCoalescer for the same query and fields
+ * for the remainder of the request, and resolved values (including keys that have no row, which resolve
+ * to null) are kept until the request ends, or until Util writes to an object that the query references.
+ *
+ * The query marks the position of the 'contains' list with QueryUtil.CONTAINS_LIST, and must select both
+ * the key field and the value field, e.g.:
+ *
+ *    LookupCoalescer userNames = LookupCoalescer.forQuery(
+ *      "select id, name__v from user__sys where id contains " + QueryUtil.CONTAINS_LIST + " order by id",
+ *      "id", "name__v", false
+ *    );
+ *    userNames.request(userIds);       // optional, but this is what coalesces the lookups
+ *    for (String userId : userIds) {
+ *      String name = userNames.get(userId);
+ *      ...
+ *    }
+ *
+ * If the query returns more than one row for a key, the value from the first row is used.
+ */
+
+@UserDefinedClassInfo
+public class LookupCoalescer {
+
+    private String query;
+    private String keyField;
+    private String valueField;
+    private boolean numericKeys;
+
+    private Map<String, String> values;   // resolved keys; a key with no row maps to null
+    private Set<String> pending;
+    private int queryCount;
+
+    LookupCoalescer(String query, String keyField, String valueField, boolean numericKeys) {
+      this.query = query;
+      this.keyField = keyField;
+      this.valueField = valueField;
+      this.numericKeys = numericKeys;
+      this.values = VaultCollections.newMap();
+      this.pending = VaultCollections.newSet();
+      this.queryCount = 0;
+    }
+
+    /**
+     * Return the LookupCoalescer for the query and fields in the current request.
+     * @param query - String.  vql query containing QueryUtil.CONTAINS_LIST, selecting keyField and valueField.
+     * @param keyField - String.  The field filtered by the 'contains' list.
+     * @param valueField - String.  The field whose value is looked up.  Must be a String-valued field (e.g. text, ID).
+     * @param numericKeys - boolean.  True if keyField is a Number field, so that the keys are not quoted.
+     * @return LookupCoalescer
+     */
+    public static LookupCoalescer forQuery(String query, String keyField, String valueField, boolean numericKeys) {
+      return LookupCoalescerRegistry.get().getCoalescer(query, keyField, valueField, numericKeys);
+    }
+
+    /**
+     * Add a key to be resolved by the next get() of an unresolved key.  Has no effect if the key is
+     * already resolved or pending.
+     * @param key - String
+     * @return this LookupCoalescer
+     */
+    public LookupCoalescer request(String key) {
+      if (key != null && !this.values.containsKey(key) && !this.pending.contains(key)) {
+        this.pending.add(key);
+      }
+      return this;
+    }
+
+    /**
+     * Add keys to be resolved by the next get() of an unresolved key.
+     * @param keys - Collection<String>
+     * @return this LookupCoalescer
+     */
+    public LookupCoalescer request(Collection<String> keys) {
+      for (String key : keys) {
+        this.request(key);
+      }
+      return this;
+    }
+
+    /**
+     * Return the value for a key, or null if the query returns no row for the key.  If the key is not yet
+     * resolved, all pending keys are resolved together.
+     * @param key - String
+     * @return String or null
+     */
+    public String get(String key) {
+      if (key == null) {
+        return null;
+      }
+      if (!this.values.containsKey(key)) {
+        this.request(key);
+        this.resolve();
+      }
+      return this.values.get(key);
+    }
+
+    /**
+     * Resolve all pending keys now.
+     */
+    public void resolve() {
+
+      if (this.pending.isEmpty()) {
+        return;
+      }
+
+      ContainsQuery containsQuery = QueryUtil.queryContains(this.query, Util.toList(this.pending));
+      if (this.numericKeys) {
+        containsQuery.numericValues();
+      }
+
+      while (containsQuery.hasNext()) {
+        QueryExecutionResult result = containsQuery.next();
+        String key = this.numericKeys ?
+          numericKey(result.getValue(this.keyField, ValueType.NUMBER)) :
+          result.getValue(this.keyField, ValueType.STRING);
+        if (!this.values.containsKey(key)) {
+          this.values.put(key, result.getValue(this.valueField, ValueType.STRING));
+        }
+      }
+      this.queryCount += containsQuery.getBatchCount();
+
+      for (String key : this.pending) {
+        if (!this.values.containsKey(key)) {
+          this.values.put(key, null);
+        }
+      }
+      this.pending.clear();
+    }
+
+    /**
+     * Return the number of 'contains' queries run so far.
+     * @return int
+     */
+    public int getQueryCount() {
+      return this.queryCount;
+    }
+
+    String getQuery() {
+      return this.query;
+    }
+
+    // Discard all resolved values, so that they are queried again.
+    void clear() {
+      this.values.clear();
+    }
+
+    /**
+     * Return a key for a Number key field, in the form returned by the query.
+     * @param number - BigDecimal or int
+     * @return String
+     */
+    public static String numericKey(BigDecimal number) {
+      return number.stripTrailingZeros().toPlainString();
+    }
+    public static String numericKey(int number) {
+      return String.valueOf(number);
+    }
+}
@@ -0,0 +1,67 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.Map;
+
+/**
+ * Holds the LookupCoalescers created in the current request, keyed by query and fields.  The registry
+ * lives in the RequestContext.  See LookupCoalescer.forQuery().
+ */
+
+@UserDefinedClassInfo
+class LookupCoalescerRegistry implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "LookupCoalescer.coalescers";
+
+    private Map<String, LookupCoalescer> coalescers;
+
+    private LookupCoalescerRegistry() {
+      this.coalescers = VaultCollections.newMap();
+    }
+
+    static LookupCoalescerRegistry get() {
+      LookupCoalescerRegistry registry = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(LookupCoalescerRegistry.class)
+      );
+      if (registry == null) {
+        registry = new LookupCoalescerRegistry();
+        RequestContext.get().setValue(CONTEXT_KEY, registry);
+      }
+      return registry;
+    }
+
+    LookupCoalescer getCoalescer(String query, String keyField, String valueField, boolean numericKeys) {
+      String key = keyField + "|" + valueField + "|" + query;
+      LookupCoalescer coalescer = this.coalescers.get(key);
+      if (coalescer == null) {
+        coalescer = new LookupCoalescer(query, keyField, valueField, numericKeys);
+        this.coalescers.put(key, coalescer);
+      }
+      return coalescer;
+    }
+
+    /**
+     * Discard the resolved values of coalescers whose query contains the token, e.g. an object name.
+     * @param token - String.  Lower-case object name or relationship token.
+     */
+    static void invalidate(String token) {
+      LookupCoalescerRegistry registry = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(LookupCoalescerRegistry.class)
+      );
+      if (registry == null) {
+        return;
+      }
+      for (LookupCoalescer coalescer : registry.coalescers.values()) {
+        if (coalescer.getQuery().toLowerCase().contains(token)) {
+          coalescer.clear();
+        }
+      }
+    }
+}
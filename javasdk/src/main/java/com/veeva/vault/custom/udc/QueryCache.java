@@ -0,0 +1,170 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.query.QueryExecutionResponse;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request-scoped memoizing cache for QueryUtil.  The cache lives in the RequestContext, so it
+ * is discarded when the request ends.  It is opt-in: QueryUtil only uses it after
+ * QueryUtil.enableRequestCache() has been called in the current request.
+ *
+ * Entries are keyed by the normalized VQL string (see normalize()).  Entries are invalidated
+ * when Util saves or deletes records, or saves documents, whose object name appears in the
+ * cached query.  Pages of QueryUtil.queryPaged() are not cached, so paging keeps its one-page
+ * memory bound.
+ */
+
+@UserDefinedClassInfo
+public class QueryCache implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "QueryUtil.queryCache";
+
+    // Tokens identifying queries that read document fields, directly or through a relationship.
+    private static final String DOCUMENTS = "documents";
+    private static final String DOCUMENT_RELATIONSHIP = "document__sysr";
+
+    private boolean enabled;
+    private Map<String, QueryExecutionResponse> responses;
+    private Map<String, Long> counts;
+
+    private QueryCache() {
+      this.enabled = true;
+      this.responses = VaultCollections.newMap();
+      this.counts = VaultCollections.newMap();
+    }
+
+    /**
+     * Return the QueryCache for the current request, or null if caching has not been enabled.
+     * @return QueryCache or null
+     */
+    public static QueryCache get() {
+      QueryCache cache = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(QueryCache.class)
+      );
+      return (cache != null && cache.enabled) ? cache : null;
+    }
+
+    /**
+     * Enable caching for the remainder of the current request.  Has no effect if already enabled.
+     */
+    public static void enable() {
+      if (get() == null) {
+        RequestContext.get().setValue(CONTEXT_KEY, new QueryCache());
+      }
+    }
+
+    /**
+     * Disable caching and discard all cached entries for the current request.
+     */
+    public static void disable() {
+      QueryCache cache = get();
+      if (cache != null) {
+        cache.enabled = false;
+        cache.responses.clear();
+        cache.counts.clear();
+      }
+    }
+
+    /**
+     * Discard cached entries whose query references the named object.  Does nothing if caching
+     * is not enabled.
+     * @param objectName - String.  Name of the Vault Object, e.g. "agenda_item__c"
+     */
+    public static void invalidate(String objectName) {
+      QueryCache cache = get();
+      if (cache != null) {
+        cache.remove(objectName.toLowerCase());
+      }
+    }
+
+    /**
+     * Discard cached entries whose query reads document fields.  Does nothing if caching is not enabled.
+     */
+    public static void invalidateDocuments() {
+      QueryCache cache = get();
+      if (cache != null) {
+        cache.remove(DOCUMENTS);
+        cache.remove(DOCUMENT_RELATIONSHIP);
+      }
+    }
+
+    public QueryExecutionResponse getResponse(String key) {
+      return this.responses.get(key);
+    }
+
+    public void putResponse(String key, QueryExecutionResponse response) {
+      this.responses.put(key, response);
+    }
+
+    public Long getCount(String key) {
+      return this.counts.get(key);
+    }
+
+    public void putCount(String key, long count) {
+      this.counts.put(key, Long.valueOf(count));
+    }
+
+    /**
+     * Return the cache key for a query: whitespace outside of quoted literals is collapsed to a
+     * single space, and text outside of quoted literals is lower-cased.  Quoted literals are
+     * left untouched.
+     * @param query - String.  The vql query string.
+     * @return String
+     */
+    public static String normalize(String query) {
+
+      StringBuilder key = new StringBuilder(query.length());
+      boolean inLiteral = false;
+      boolean pendingSpace = false;
+
+      for (int i = 0; i < query.length(); i++) {
+        char c = query.charAt(i);
+        if (inLiteral) {
+          key.append(c);
+          if (c == '\\' && i + 1 < query.length()) {
+            key.append(query.charAt(++i));
+          } else if (c == '\'') {
+            inLiteral = false;
+          }
+        } else if (Character.isWhitespace(c)) {
+          pendingSpace = key.length() > 0;
+        } else {
+          if (pendingSpace) {
+            key.append(' ');
+            pendingSpace = false;
+          }
+          key.append(Character.toLowerCase(c));
+          if (c == '\'') {
+            inLiteral = true;
+          }
+        }
+      }
+
+      return key.toString();
+    }
+
+    private void remove(String token) {
+      removeKeys(this.responses, token);
+      removeKeys(this.counts, token);
+    }
+
+    private static void removeKeys(Map<String, ?> map, String token) {
+      List<String> matched = VaultCollections.newList();
+      for (String key : map.keySet()) {
+        if (key.contains(token)) {
+          matched.add(key);
+        }
+      }
+      for (String key : matched) {
+        map.remove(key);
+      }
+    }
+}
@@ -0,0 +1,125 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the results of a VQL query one page at a time.  Each page is fetched with the
+ * VQL PAGESIZE/PAGEOFFSET clauses, and the next page is not requested until the current page
+ * has been consumed.  Only one page of results is held in memory at any time.
+ *
+ * The query should contain an 'order by' clause so that paging is stable across requests, and
+ * must not contain its own PAGESIZE/PAGEOFFSET clauses.
+ *
+ * Example usage:
+ *
+ *    Iterator<QueryExecutionResult> iter = QueryUtil.queryPaged("select id from agenda__c order by id", 500);
+ *    while (iter.hasNext()) {
+ *      QueryExecutionResult result = iter.next();
+ *      ...
+ *    }
+ */
+
+@UserDefinedClassInfo
+public class QueryPager implements Iterator<QueryExecutionResult> {
+
+    private String query;
+    private int pageSize;
+
+    private int pageOffset;
+    private int pageRowCount;
+    private int pageCount;
+    private long rowCount;
+    private boolean lastPage;
+
+    private String pageQuery;
+    private Iterator<QueryExecutionResult> page;
+
+    /**
+     * QueryPager constructor.
+     * @param query - String.  The vql query string, without PAGESIZE/PAGEOFFSET clauses.
+     * @param pageSize - int.  The number of rows to fetch per page.
+     */
+    public QueryPager(String query, int pageSize) {
+      this.query = query;
+      this.pageSize = pageSize;
+      this.pageOffset = 0;
+      this.pageRowCount = 0;
+      this.pageCount = 0;
+      this.rowCount = 0;
+      this.lastPage = false;
+      this.pageQuery = null;
+      this.page = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (this.page == null || !this.page.hasNext()) {
+        // a short page means there is nothing more to fetch
+        if (this.lastPage || (this.page != null && this.pageRowCount < this.pageSize)) {
+          if (!this.lastPage) {
+            this.recordPageConsumed();
+          }
+          this.lastPage = true;
+          return false;
+        }
+        this.fetchNextPage();
+      }
+      return true;
+    }
+
+    @Override
+    public QueryExecutionResult next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      this.pageRowCount++;
+      this.rowCount++;
+      return this.page.next();
+    }
+
+    /**
+     * Return the number of pages fetched so far.
+     * @return int
+     */
+    public int getPageCount() {
+      return this.pageCount;
+    }
+
+    /**
+     * Return the number of rows consumed so far.
+     * @return long
+     */
+    public long getRowCount() {
+      return this.rowCount;
+    }
+
+    private void fetchNextPage() {
+      if (this.page != null) {
+        this.recordPageConsumed();
+      }
+      StringBuilder pageQuery = new StringBuilder(this.query.length() + 40);
+      pageQuery
+        .append(this.query)
+        .append(" PAGESIZE ").append(this.pageSize)
+        .append(" PAGEOFFSET ").append(this.pageOffset);
+
+      this.pageQuery = pageQuery.toString();
+      this.page = QueryUtil.queryPage(this.pageQuery).streamResults().iterator();
+      this.pageOffset += this.pageSize;
+      this.pageRowCount = 0;
+      this.pageCount++;
+    }
+
+    // Report the rows read from the current page to the QueryProfiler, if it is enabled.  Rows read
+    // from a page that is abandoned before it is exhausted are not reported.
+    private void recordPageConsumed() {
+      QueryProfiler profiler = QueryProfiler.get();
+      if (profiler != null) {
+        profiler.recordConsumed(this.pageQuery, this.pageRowCount);
+      }
+    }
+}
@@ -0,0 +1,96 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/**
+ * The statistics that QueryProfiler collects for one query template called from one caller:
+ * the number of calls, a histogram of elapsed times (ms), a histogram of rows returned per call,
+ * and the total number of rows actually consumed by the caller.
+ *
+ * Rows consumed are only measured for queries whose rows are read through QueryUtil (queryPaged, queryOne,
+ * findAny, exists) or a VaultQueryIterator; for other queries getRowsConsumed() returns -1.
+ */
+
+@UserDefinedClassInfo
+public class QueryProfile {
+
+    private String caller;
+    private String template;
+
+    private long calls;
+    private long rowsReturned;
+    private long rowsConsumed;
+    private boolean consumedMeasured;
+    private Histogram elapsedMillis;
+    private Histogram rowCounts;
+
+    QueryProfile(String caller, String template) {
+      this.caller = caller;
+      this.template = template;
+      this.calls = 0;
+      this.rowsReturned = 0;
+      this.rowsConsumed = 0;
+      this.consumedMeasured = false;
+      this.elapsedMillis = Histogram.forMillis();
+      this.rowCounts = Histogram.forRows();
+    }
+
+    void recordCall(long elapsed, long returned) {
+      this.calls++;
+      this.rowsReturned += returned;
+      this.elapsedMillis.record(elapsed);
+      this.rowCounts.record(returned);
+    }
+
+    void recordConsumed(long consumed) {
+      this.rowsConsumed += consumed;
+      this.consumedMeasured = true;
+    }
+
+    public String getCaller() {
+      return this.caller;
+    }
+
+    public String getTemplate() {
+      return this.template;
+    }
+
+    public long getCalls() {
+      return this.calls;
+    }
+
+    public long getRowsReturned() {
+      return this.rowsReturned;
+    }
+
+    /**
+     * Return the rows consumed by the caller, or -1 if consumption is not measured for this template.
+     * @return long
+     */
+    public long getRowsConsumed() {
+      return this.consumedMeasured ? this.rowsConsumed : -1;
+    }
+
+    public Histogram getElapsedMillis() {
+      return this.elapsedMillis;
+    }
+
+    public Histogram getRowCounts() {
+      return this.rowCounts;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder(this.template.length() + 250);
+      sb
+        .append("calls=").append(this.calls)
+        .append(" totalMs=").append(this.elapsedMillis.getSum())
+        .append(" rowsReturned=").append(this.rowsReturned)
+        .append(" rowsConsumed=").append(this.consumedMeasured ? String.valueOf(this.rowsConsumed) : "n/a")
+        .append(" caller=").append(this.caller)
+        .append(" | ").append(this.template)
+        .append(" | elapsedMs: ").append(this.elapsedMillis)
+        .append(" | rows: ").append(this.rowCounts);
+      return sb.toString();
+    }
+}
@@ -0,0 +1,215 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request-scoped query profiler.  When enabled, QueryUtil and VaultAPI.executeQuery record, per query
+ * template and per caller, the number of calls, elapsed time, rows returned and rows consumed (see
+ * QueryProfile).  The profiler lives in the RequestContext and is opt-in: nothing is recorded until
+ * QueryProfiler.enable() has been called in the current request.
+ *
+ * The template of a query is the query with its quoted literals and numbers replaced by '?', so the
+ * same query run for different records is counted under one template; a template called many times
+ * with few rows per call is the signature of an N+1 pattern.  The caller is a tag set with setCaller(),
+ * e.g. the trigger or job name.  At most MAX_PROFILES profiles are kept; further templates are counted
+ * in a single overflow profile.
+ *
+ * Example usage:
+ *
+ *    QueryProfiler.enable("AgendaItemBefore");
+ *    ...
+ *    QueryProfiler.dump(logger);   // debug level: only logged if the logger's level has been raised
+ */
+
+@UserDefinedClassInfo
+public class QueryProfiler implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "QueryUtil.queryProfiler";
+
+    public static final int MAX_PROFILES = 100;
+
+    private static final String DEFAULT_CALLER = "-";
+    private static final String OVERFLOW_TEMPLATE = "(other templates)";
+
+    private String caller;
+    private Map<String, QueryProfile> profiles;
+    private QueryProfile overflow;
+
+    private QueryProfiler(String caller) {
+      this.caller = caller;
+      this.profiles = VaultCollections.newMap();
+      this.overflow = null;
+    }
+
+    /**
+     * Return the QueryProfiler for the current request, or null if profiling has not been enabled.
+     * @return QueryProfiler or null
+     */
+    public static QueryProfiler get() {
+      return RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(QueryProfiler.class)
+      );
+    }
+
+    /**
+     * Enable profiling for the remainder of the current request, and set the caller tag.  If profiling
+     * is already enabled, only the caller tag is changed.
+     * @param caller - String.  Tag identifying the code running the queries, e.g. "AgendaItemBefore".
+     */
+    public static void enable(String caller) {
+      QueryProfiler profiler = get();
+      if (profiler == null) {
+        RequestContext.get().setValue(CONTEXT_KEY, new QueryProfiler(caller));
+      } else {
+        profiler.caller = caller;
+      }
+    }
+
+    /**
+     * Set the caller tag under which subsequent queries are recorded, and return the previous tag so that
+     * it can be restored.  Does nothing, and returns null, if profiling is not enabled.
+     * @param caller - String.
+     * @return String.  The previous caller tag.
+     */
+    public static String setCaller(String caller) {
+      QueryProfiler profiler = get();
+      if (profiler == null) {
+        return null;
+      }
+      String previous = profiler.caller;
+      profiler.caller = caller == null ? DEFAULT_CALLER : caller;
+      return previous;
+    }
+
+    /**
+     * Record one execution of a query.
+     * @param query - String.  The vql query string, as executed.
+     * @param elapsedMillis - long.
+     * @param rowsReturned - long.  Rows returned by Vault.
+     * @param rowsConsumed - long.  Rows the caller is known to use, 0 if reported later with recordConsumed(),
+     *                       or -1 if not measured.
+     */
+    public void recordQuery(String query, long elapsedMillis, long rowsReturned, long rowsConsumed) {
+      QueryProfile profile = this.profile(template(query));
+      profile.recordCall(elapsedMillis, rowsReturned);
+      if (rowsConsumed >= 0) {
+        profile.recordConsumed(rowsConsumed);
+      }
+    }
+
+    /**
+     * Record rows consumed from an earlier execution of a query, e.g. the rows read from a page.
+     * @param query - String.  The vql query string, as executed.
+     * @param rowsConsumed - long.
+     */
+    public void recordConsumed(String query, long rowsConsumed) {
+      this.profile(template(query)).recordConsumed(rowsConsumed);
+    }
+
+    /**
+     * Return the profiles recorded in the current request, most total elapsed time first, or an empty list
+     * if profiling is not enabled.
+     * @return List<QueryProfile>
+     */
+    public static List<QueryProfile> snapshot() {
+      List<QueryProfile> snapshot = VaultCollections.newList();
+      QueryProfiler profiler = get();
+      if (profiler != null) {
+        snapshot.addAll(profiler.profiles.values());
+        if (profiler.overflow != null) {
+          snapshot.add(profiler.overflow);
+        }
+        snapshot.sort((p1, p2) -> Long.compare(p2.getElapsedMillis().getSum(), p1.getElapsedMillis().getSum()));
+      }
+      return snapshot;
+    }
+
+    /**
+     * Write the profiles recorded in the current request to the logger, one line per profile, most total
+     * elapsed time first, at debug level.  Does nothing if profiling is not enabled, or if the logger's
+     * debug level is not enabled.
+     * @param logger - Logger
+     */
+    public static void dump(Logger logger) {
+      if (get() == null || !logger.isEnabled(Logger.DEBUG)) {
+        return;
+      }
+      List<QueryProfile> snapshot = snapshot();
+      logger.debug("Query profile: " + snapshot.size() + " template(s)");
+      for (QueryProfile profile : snapshot) {
+        logger.debug("Query profile: " + profile);
+      }
+    }
+
+    private QueryProfile profile(String template) {
+      String key = this.caller + "|" + template;
+      QueryProfile profile = this.profiles.get(key);
+      if (profile == null) {
+        if (this.profiles.size() >= MAX_PROFILES) {
+          if (this.overflow == null) {
+            this.overflow = new QueryProfile(DEFAULT_CALLER, OVERFLOW_TEMPLATE);
+          }
+          return this.overflow;
+        }
+        profile = new QueryProfile(this.caller, template);
+        this.profiles.put(key, profile);
+      }
+      return profile;
+    }
+
+    /**
+     * Return the template of a query: whitespace collapsed, text lower-cased, and quoted literals and
+     * numbers replaced by '?'.
+     * @param query - String.  The vql query string.
+     * @return String
+     */
+    public static String template(String query) {
+
+      String normalized = QueryCache.normalize(query);
+      StringBuilder template = new StringBuilder(normalized.length());
+      int i = 0;
+
+      while (i < normalized.length()) {
+        char c = normalized.charAt(i);
+        if (c == '\'') {
+          // skip to the end of the literal
+          i++;
+          while (i < normalized.length() && normalized.charAt(i) != '\'') {
+            if (normalized.charAt(i) == '\\') {
+              i++;
+            }
+            i++;
+          }
+          template.append('?');
+          i++;
+        } else if (Character.isDigit(c) && !isPartOfName(template)) {
+          while (i < normalized.length() && (Character.isDigit(normalized.charAt(i)) || normalized.charAt(i) == '.')) {
+            i++;
+          }
+          template.append('?');
+        } else {
+          template.append(c);
+          i++;
+        }
+      }
+
+      return template.toString();
+    }
+
+    // True if the last character appended is part of a field or object name, e.g. the '2' in "v2__c".
+    private static boolean isPartOfName(StringBuilder sb) {
+      if (sb.length() == 0) {
+        return false;
+      }
+      char last = sb.charAt(sb.length() - 1);
+      return Character.isLetterOrDigit(last) || last == '_';
+    }
+}
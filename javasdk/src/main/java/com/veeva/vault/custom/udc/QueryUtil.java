@@ -5,6 +5,9 @@ import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
 import com.veeva.vault.sdk.api.query.*;
 
+import java.util.Iterator;
+import java.util.List;
+
 /*
 
   This class wraps QueryService calls in a way that makes it simple to handle VQL Queries based on the new interfaces 
@@ -15,18 +18,60 @@ import com.veeva.vault.sdk.api.query.*;
   query - Execute a query, and return the resulting QueryExecutionResponse object.
   queryOne - Return a single QueryExecutionResult, or null if the query returns no result.
   queryCount - Return a long integer containing the count of rows that would be returned by the query.
+  findAny - Return the first QueryExecutionResult, fetching at most one row, or null if the query returns no result.
+  exists - Return true if the query returns at least one row, fetching at most one row.
+  queryPaged - Return an Iterator that fetches the query results one page at a time, as they are consumed.
+  queryContains - Return a ContainsQuery, which runs a 'contains' query in bounded batches of values.
+  enableRequestCache - Memoize query, queryOne and queryCount results for the remainder of the request.
+  disableRequestCache - Stop memoizing query results and discard the request's cached results.
+  enableProfiler - Record timing and row counts per query template and caller for the remainder of the request.
+  dumpProfile - Log the query profile recorded in the current request.
 
  */
 
 @UserDefinedClassInfo
 public class QueryUtil {
-    
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    // Marks the position of the 'contains' list in a query passed to queryContains().
+    public static final String CONTAINS_LIST = "${containsList}";
+
     /**
      * Execute a query, and return the resulting QueryExecutionResponse object.
      * @param query -- String.  The vql query string.
      * @return  -- and instance of QueryExecutionResponse
      */
     public static QueryExecutionResponse query(String query) {
+      return query(query, -1);
+    }
+
+    // Execute a query.  maxConsumed is the most rows the caller will read, for the QueryProfiler: the caller
+    // reads min(rows returned, maxConsumed) rows, or reports them later if 0; -1 means not measured, because
+    // the response is handed to the caller.
+    static QueryExecutionResponse query(String query, long maxConsumed) {
+      return execute(query, maxConsumed, QueryCache.get());
+    }
+
+    // Execute one page of a paged query.  Pages bypass the request cache, so that a QueryPager holds only
+    // one page in memory; the rows consumed are reported by the pager.
+    static QueryExecutionResponse queryPage(String pageQuery) {
+      return execute(pageQuery, 0, null);
+    }
+
+    private static QueryExecutionResponse execute(String query, long maxConsumed, QueryCache cache) {
+
+      String cacheKey = null;
+      if (cache != null) {
+        cacheKey = QueryCache.normalize(query);
+        QueryExecutionResponse cachedResponse = cache.getResponse(cacheKey);
+        if (cachedResponse != null) {
+          return cachedResponse;
+        }
+      }
+
+      QueryProfiler profiler = QueryProfiler.get();
+      long startMillis = profiler != null ? Util.currentTimeMillis() : 0;
 
       QueryService queryService = ServiceLocator.locate(QueryService.class);
 
@@ -44,6 +89,16 @@ public class QueryUtil {
         })
         .execute();
 
+      if (profiler != null) {
+        long rowCount = queryResponse[0].getResultCount();
+        long rowsConsumed = maxConsumed < 0 ? -1 : Math.min(rowCount, maxConsumed);
+        profiler.recordQuery(query, Util.currentTimeMillis() - startMillis, rowCount, rowsConsumed);
+      }
+
+      if (cache != null) {
+        cache.putResponse(cacheKey, queryResponse[0]);
+      }
+
       return queryResponse[0];
     }
 
@@ -54,7 +109,7 @@ public class QueryUtil {
      */
     public static QueryExecutionResult queryOne(String query) {
       QueryExecutionResult queryExecutionResult = null;
-      QueryExecutionResponse queryExecutionResponse = QueryUtil.query(query);
+      QueryExecutionResponse queryExecutionResponse = QueryUtil.query(query, 1);
       if (queryExecutionResponse.getResultCount() > 0) {
         queryExecutionResult = queryExecutionResponse.streamResults().findFirst().get();
       }
@@ -69,6 +124,19 @@ public class QueryUtil {
      */
     public static long queryCount(String query) {
 
+      QueryCache cache = QueryCache.get();
+      String cacheKey = null;
+      if (cache != null) {
+        cacheKey = QueryCache.normalize(query);
+        Long cachedCount = cache.getCount(cacheKey);
+        if (cachedCount != null) {
+          return cachedCount.longValue();
+        }
+      }
+
+      QueryProfiler profiler = QueryProfiler.get();
+      long startMillis = profiler != null ? Util.currentTimeMillis() : 0;
+
       QueryService queryService = ServiceLocator.locate(QueryService.class);
 
       QueryCountRequest queryCountRequest = queryService.newQueryCountRequestBuilder()
@@ -86,7 +154,107 @@ public class QueryUtil {
         })
         .execute();
 
+      if (profiler != null) {
+        profiler.recordQuery("count: " + query, Util.currentTimeMillis() - startMillis, 0, -1);
+      }
+
+      if (cache != null) {
+        cache.putCount(cacheKey, count[0]);
+      }
+
       return count[0];
     }
 
-}
\ No newline at end of file
+    /**
+     * findAny.  Return the first QueryExecutionResult, or null if the query returns no result.  At most one
+     * row is fetched (PAGESIZE 1), so use this instead of query/queryCount when any matching row will do,
+     * e.g. to report the first row that fails a validation.
+     * @param query - String.  The vql query string, without PAGESIZE/PAGEOFFSET clauses.
+     * @return QueryExecutionResult or null
+     */
+    public static QueryExecutionResult findAny(String query) {
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(query + " PAGESIZE 1", 1).streamResults().iterator();
+      return iter.hasNext() ? iter.next() : null;
+    }
+
+    /**
+     * exists.  Return true if the query returns at least one row.  At most one row is fetched (PAGESIZE 1).
+     * @param query - String.  The vql query string, without PAGESIZE/PAGEOFFSET clauses.
+     * @return boolean
+     */
+    public static boolean exists(String query) {
+      return findAny(query) != null;
+    }
+
+    /**
+     * queryPaged.  Return an Iterator over the query results that fetches one page at a time (using
+     * VQL PAGESIZE/PAGEOFFSET), requesting the next page only when the current page has been consumed.
+     * Use this for queries that can return a large number of rows.  The query should include an
+     * 'order by' clause so that paging is stable.
+     * @param query - String.  The vql query string, without PAGESIZE/PAGEOFFSET clauses.
+     * @param pageSize - int.  Optional.  Number of rows per page.  Default is DEFAULT_PAGE_SIZE.
+     * @return Iterator<QueryExecutionResult>
+     */
+    public static Iterator<QueryExecutionResult> queryPaged(String query, int pageSize) {
+      return new QueryPager(query, pageSize);
+    }
+    public static Iterator<QueryExecutionResult> queryPaged(String query) {
+      return queryPaged(query, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * queryContains.  Return a ContainsQuery for a query whose 'contains' filter is built from a list of
+     * values that may be too long for a single query.  The query marks the position of the 'contains' list
+     * with CONTAINS_LIST, e.g. "select id from documents where version_id contains ${containsList}".
+     * The values are split into batches of at most batchSize values.  Iterate the ContainsQuery to stream
+     * the rows of all batches, or call count() to get the sum of the counts of all batches.
+     * @param query - String.  The vql query string, containing CONTAINS_LIST.
+     * @param values - List<String>.  The values for the 'contains' filter.
+     * @param batchSize - int.  Optional.  Maximum values per query.  Default is ContainsQuery.DEFAULT_BATCH_SIZE.
+     * @return ContainsQuery
+     */
+    public static ContainsQuery queryContains(String query, List<String> values, int batchSize) {
+      return new ContainsQuery(query, values, batchSize);
+    }
+    public static ContainsQuery queryContains(String query, List<String> values) {
+      return queryContains(query, values, ContainsQuery.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * enableRequestCache.  Memoize the results of query, queryOne and queryCount (keyed by the normalized
+     * query string) for the remainder of the current request.  Cached results are discarded when
+     * Util.batchSaveRecords, Util.batchDeleteRecords or Util.saveDocumentVersions write to an object
+     * that the query references.
+     */
+    public static void enableRequestCache() {
+      QueryCache.enable();
+    }
+
+    /**
+     * disableRequestCache.  Stop memoizing query results and discard the results cached in the current request.
+     */
+    public static void disableRequestCache() {
+      QueryCache.disable();
+    }
+
+    /**
+     * enableProfiler.  Record the elapsed time, rows returned and rows consumed of every query run through
+     * QueryUtil or VaultAPI.executeQuery for the remainder of the current request, per query template and
+     * caller.  Call dumpProfile() at the end of the request to log the results.  See QueryProfiler.
+     * Profiling is a diagnostic: enable it while investigating a trigger or job, not in every execution.
+     * @param caller - String.  Tag identifying the code running the queries, e.g. the trigger or job name.
+     */
+    public static void enableProfiler(String caller) {
+      QueryProfiler.enable(caller);
+    }
+
+    /**
+     * dumpProfile.  Log the query profile of the current request, most expensive query template first.
+     * Does nothing if the profiler has not been enabled.
+     * @param logger - Logger
+     */
+    public static void dumpProfile(Logger logger) {
+      QueryProfiler.dump(logger);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hash-based set algebra over collections of values such as record ID's and user ID's.  An operation
+ * hashes at most one of its inputs and scans the other once, so it runs in O(n + m) time instead of the
+ * O(n * m) of comparing every pair.  An input that is already a Set is used for lookups as is, without
+ * being copied.
+ *
+ *   - difference - values of a that are not in b, in a's order, keeping a's duplicates
+ */
+
+@UserDefinedClassInfo
+public class SetAlgebra {
+
+    /**
+     * Return the values of a that are not in b, in a's order.
+     * @param a - Collection<T>
+     * @param b - Collection<? extends T>
+     * @return List<T>
+     */
+    public static <T> List<T> difference(Collection<T> a, Collection<? extends T> b) {
+      Set<?> exclude = lookupSet(b);
+      List<T> result = VaultCollections.newList();
+      for (T value : a) {
+        if (!exclude.contains(value)) {
+          result.add(value);
+        }
+      }
+      return result;
+    }
+
+    // Return the collection itself if it is a Set, otherwise a hashed copy.  Only used for contains().
+    private static Set<?> lookupSet(Collection<?> collection) {
+      if (collection instanceof Set) {
+        return (Set<?>) collection;
+      }
+      Set<Object> set = VaultCollections.newSet();
+      set.addAll(collection);
+      return set;
+    }
+}
@@ -1,16 +1,12 @@
 package com.veeva.vault.custom.udc;
 
-import com.veeva.vault.sdk.api.core.ServiceLocator;
 import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
 import com.veeva.vault.sdk.api.core.ValueType;
 import com.veeva.vault.sdk.api.core.VaultCollections;
-import com.veeva.vault.sdk.api.document.DocumentService;
-import com.veeva.vault.sdk.api.document.DocumentVersion;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 /**
  * This module contains business logic relative to the Submission Manifest (submission_manifest__c) Object:
@@ -21,6 +17,9 @@ import java.util.Map;
  *      OnReturnToDraft -- logic to execute when the Manifest is returned to the Draft Status
  *      CheckAndClose -- close out the Submission Manifest if all materials have moved out of the "Pending Health
  *      Authority Submission" status
+ *      IsReadyToClose -- Checks if the Manifest can be closed
+ *      SubmitManifests -- submit many Manifests to Regulatory Operations, with bulk calls
+ *      CloseManifests -- close many Manifests, with bulk calls
  */
 
 @UserDefinedClassInfo
@@ -31,6 +30,9 @@ public class SubmissionManifest {
     private static final int REFERENCE_OP_ADD = 0;
     private static final int REFERENCE_OP_REMOVE = 1;
 
+    private static final String OBJECT_NAME = "submission_manifest__c";
+    private static final String STATE_SUBMISSION_REQUESTED = "submission_requested_state__c";
+
     /**
      *  Logic to execute when the Manifest is submitted to Regulatory Operations:
      *    - verify at least Submission Manifest Material (submission_manifest_material__c) is related;
@@ -77,8 +79,6 @@ public class SubmissionManifest {
         // multi-use variables...
         StringBuilder queryBuilder = new StringBuilder(1000);
 
-        String versionIdContainsList = Util.vqlContains(documentVersionIdList);
-
         ///////////////////////////////////////////////////////////
         // No Materials are linked to a different Manifest...
         //////////////////////////////////////////////////////////
@@ -123,13 +123,15 @@ public class SubmissionManifest {
         {
             queryBuilder.setLength(0);
             queryBuilder
-              .append("select id from documents")
-              .append(" where version_id contains ").append(versionIdContainsList)
+              .append("select document_number__v from documents")
+              .append(" where version_id contains ").append(QueryUtil.CONTAINS_LIST)
               .append("   and toName(status__v) != 'submit_to_health_authority__c'");
-            long queryCount = QueryUtil.queryCount(queryBuilder.toString());
-            if (queryCount > 0) {
+            QueryExecutionResult notReady = QueryUtil.queryContains(queryBuilder.toString(), documentVersionIdList)
+              .findAny();
+            if (notReady != null) {
               result.success = false;
-              result.message = "All Materials must be in status \"Pending Health Authority Submission\".";
+              result.message = "All Materials must be in status \"Pending Health Authority Submission\".  " +
+                "Material " + notReady.getValue("document_number__v", ValueType.STRING) + " is not.";
               return result;
             }
         }
@@ -166,13 +168,44 @@ public class SubmissionManifest {
      */
     public static Result CheckAndClose(String manifestId) {
 
+        Result result = IsReadyToClose(manifestId);
+
+        if (result.success == false) {
+            return result;
+        }
+
+        BulkActionResult closeResult = CloseManifests(VaultCollections.asList(manifestId));
+
+        if (closeResult.hasFailures()) {
+            result.message = manifestId + ": an error occurred: " + closeResult.getErrorType(manifestId) + ": " +
+              closeResult.getErrorMessage(manifestId);
+            result.success = false;
+            return result;
+        }
+
+        result.success = true;
+
+        return result;
+    }
+
+    /**
+     * IsReadyToClose - Tests whether a Submission Manifest can be closed: it is in status 'Submission Requested',
+     *   and all of its materials have moved out of the "Pending Health Authority Submission" status.
+     *
+     * @param manifestId -- Submission Manifest record ID
+     * @return Result
+     */
+    public static Result IsReadyToClose(String manifestId) {
+
         Result result = new Result();
 
         String recordState = QueryUtil.queryOne(
-          "select state__v from submission_manifest__c where id = '"+manifestId+"'"
+          VqlTemplate.get("select state__v from submission_manifest__c where id = :manifestId")
+            .setString("manifestId", manifestId)
+            .render()
         ).getValue("state__v", ValueType.STRING);
 
-        if (!recordState.equals("submission_requested_state__c")) {
+        if (!recordState.equals(STATE_SUBMISSION_REQUESTED)) {
           result.success = false;
           result.message = "Submission Manifest record must be in status 'Submission Requested'";
           return result;
@@ -186,47 +219,68 @@ public class SubmissionManifest {
           return result;
         }
 
-        long queryCount = QueryUtil.queryCount(
+        boolean submissionIncomplete = QueryUtil.queryContains(
           "select id" +
           "  from documents" +
-          " where version_id contains " + Util.vqlContains(documentVersionIdList) +
+          " where version_id contains " + QueryUtil.CONTAINS_LIST +
           "   and toName(status__v) != 'approved_for_distribution__c'" +
-          "   and toName(status__v) != 'awaiting_response_from_health_authority__c'"
-        );
+          "   and toName(status__v) != 'awaiting_response_from_health_authority__c'",
+          documentVersionIdList
+        ).exists();
 
-        if (queryCount > 0) {
+        if (submissionIncomplete) {
             result.success = false;
             result.message = "Submission is not complete for at least 1 document.";
             return result;
         }
 
-        VaultAPI vaultAPI = new VaultAPI("local_connection__c");
+        result.success = true;
 
-        String actionName = vaultAPI.getObjectUserActionName(
-          "submission_manifest__c", manifestId, "Close Manifest"
-        );
+        return result;
+    }
 
-        if (vaultAPI.failed()) {
-            String errorType = vaultAPI.getErrorType();
-            String errorMsg = vaultAPI.getErrorMessage();
-            result.message = manifestId + ": an error occurred: " + errorType + ": " + errorMsg;
-            result.success = false;
-            return result;
+    /**
+     * SubmitManifests - Execute the "Submit to Regulatory Operations" User Action on Manifests in status
+     *   'Submission Pending', with bulk calls.  Readiness is not checked; see IsSubmissionReady.
+     *
+     * @param manifestIds - List<String>.  Submission Manifest record ID's.
+     * @return BulkActionResult
+     */
+    public static BulkActionResult SubmitManifests(List<String> manifestIds) {
+        return initiateUserAction(manifestIds, "Submit to Regulatory Operations");
+    }
+
+    /**
+     * CloseManifests - Execute the "Close Manifest" User Action on Manifests in status 'Submission Requested',
+     *   with bulk calls.  Readiness is not checked; see IsReadyToClose.
+     *
+     * @param manifestIds - List<String>.  Submission Manifest record ID's.
+     * @return BulkActionResult
+     */
+    public static BulkActionResult CloseManifests(List<String> manifestIds) {
+        return initiateUserAction(manifestIds, "Close Manifest");
+    }
+
+    // Execute a User Action, identified by its label, on Manifests that are all in the same state...
+    private static BulkActionResult initiateUserAction(List<String> manifestIds, String actionLabel) {
+
+        if (manifestIds.isEmpty()) {
+            return new BulkActionResult();
         }
 
-        vaultAPI.initiateObjectRecordUserAction("submission_manifest__c", manifestId, actionName);
+        VaultAPI vaultAPI = new VaultAPI("local_connection__c");
+
+        String actionName = vaultAPI.getObjectUserActionName(OBJECT_NAME, manifestIds.get(0), actionLabel);
 
         if (vaultAPI.failed()) {
-            String errorType = vaultAPI.getErrorType();
-            String errorMsg = vaultAPI.getErrorMessage();
-            result.message = manifestId + ": an error occurred: " + errorType + ": " + errorMsg;
-            result.success = false;
+            BulkActionResult result = new BulkActionResult();
+            for (String manifestId : manifestIds) {
+                result.addFailure(manifestId, vaultAPI.getErrorType(), vaultAPI.getErrorMessage());
+            }
             return result;
         }
 
-        result.success = true;
-
-        return result;
+        return vaultAPI.initiateBulkObjectRecordUserAction(OBJECT_NAME, manifestIds, actionName);
     }
 
     // link or un-link the material document to/from the manifest...
@@ -236,16 +290,17 @@ public class SubmissionManifest {
       int referenceOp
     ) {
 
-        DocumentService documentService = ServiceLocator.locate(DocumentService.class);
-        List<DocumentVersion> documentVersions = VaultCollections.newList();
-        Map<String, List<String>> documentManifestReferencesMap = VaultCollections.newMap();
+        // keyed by packed version id (see IdCodec)
+        LongIdMap<List<String>> documentManifestReferencesMap = new LongIdMap<>(documentVersionIdList.size());
 
         // First, map the Submission Manifest field for each of the documents in the list...
         {
-            Iterator<QueryExecutionResult> iterator = QueryUtil.query(
+            Iterator<QueryExecutionResult> iterator = QueryUtil.queryContains(
               "select version_id, material_submission_manifest__c from documents " +
-                " where version_id contains " + Util.vqlContains(documentVersionIdList)
-            ).streamResults().iterator();
+                " where version_id contains " + QueryUtil.CONTAINS_LIST +
+                " order by id asc",
+              documentVersionIdList
+            );
             while (iterator.hasNext()) {
                 QueryExecutionResult result = iterator.next();
                 String versionId = result.getValue("version_id", ValueType.STRING);
@@ -253,28 +308,30 @@ public class SubmissionManifest {
                 if (manifestReference == null) {
                     manifestReference = VaultCollections.newList();
                 }
-                documentManifestReferencesMap.put(versionId, manifestReference);
+                documentManifestReferencesMap.put(IdCodec.packVersionId(versionId), manifestReference);
             }
         }
 
-        // Now, update the Submission Manifest field for each of the documents in the list...
+        // Now, update the Submission Manifest field for each of the documents in the list.  Documents that
+        // already reference the manifest (add) or don't reference it (remove) are not saved...
         {
+            DocumentVersionWriter writer = new DocumentVersionWriter();
             Iterator<String> iterator = documentVersionIdList.iterator();
             while (iterator.hasNext()) {
                 String documentVersionId = iterator.next();
-                DocumentVersion documentVersion = documentService.newVersionWithId(documentVersionId);
 
-                List<String> manifestReference = documentManifestReferencesMap.get(documentVersionId);
+                List<String> currentReference = documentManifestReferencesMap.get(IdCodec.packVersionId(documentVersionId));
+                List<String> manifestReference = VaultCollections.newList();
+                manifestReference.addAll(currentReference);
                 if (referenceOp == REFERENCE_OP_REMOVE) {
                     manifestReference.remove(manifestId);
-                } else /* referenceOp == REFERENCE_OP_ADD */ {
+                } else /* referenceOp == REFERENCE_OP_ADD */ if (!manifestReference.contains(manifestId)) {
                     manifestReference.add(manifestId);
                 }
 
-                documentVersion.setValue("material_submission_manifest__c", manifestReference);
-                documentVersions.add(documentVersion);
+                writer.setValue(documentVersionId, "material_submission_manifest__c", currentReference, manifestReference);
             }
-            documentService.saveDocumentVersions(documentVersions);
+            writer.save();
         }
     }
 
@@ -284,11 +341,14 @@ public class SubmissionManifest {
 
         List<String> documentVersionIds = VaultCollections.newList();
 
-        Iterator<QueryExecutionResult> iter = QueryUtil.query(
+        String query = VqlTemplate.get(
           "select document__c" +
           "  from submission_manifest_material__c" +
-          " where submission_manifest__c = '"+manifestId+"'"
-        ).streamResults().iterator();
+          " where submission_manifest__c = :manifestId" +
+          " order by id asc"
+        ).setString("manifestId", manifestId).render();
+
+        Iterator<QueryExecutionResult> iter = QueryUtil.queryPaged(query);
 
         while (iter.hasNext()) {
             QueryExecutionResult result = iter.next();
@@ -0,0 +1,185 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks changes to the fields of an object record, so that a save sends only the fields that changed,
+ * and an unchanged record is not saved at all.  The original value of each tracked field is recorded
+ * with snapshot(); setValue() marks the field as changed only if the new value differs from the original
+ * (Numbers are compared by value, so 1 and 1.0 are equal).  Setting a field back to its original value
+ * un-marks it.
+ *
+ * Example usage:
+ *
+ *    TrackedRecord tracked = new TrackedRecord("agenda_item__c", recordId)
+ *      .snapshot("order__c", order)
+ *      .snapshot("start_time__c", startTime);
+ *    tracked.setValue("order__c", newOrder);
+ *    tracked.save();   // saves order__c only if it changed; does nothing otherwise
+ *
+ * For many records, TrackedRecord.saveChanged() saves the changed records in one batch.
+ */
+
+@UserDefinedClassInfo
+public class TrackedRecord {
+
+    private String objectName;
+    private String recordId;
+
+    private Map<String, Object> originalValues;
+    private Map<String, Object> currentValues;
+    private Set<String> changedFields;
+
+    /**
+     * TrackedRecord constructor.
+     * @param objectName - String.  Name of the Vault Object.
+     * @param recordId - String.  ID of an existing record.
+     */
+    public TrackedRecord(String objectName, String recordId) {
+      this.objectName = objectName;
+      this.recordId = recordId;
+      this.originalValues = VaultCollections.newMap();
+      this.currentValues = VaultCollections.newMap();
+      this.changedFields = VaultCollections.newSet();
+    }
+
+    /**
+     * Record the original value of a field.
+     * @param fieldName - String
+     * @param value - the field's value as stored in Vault (may be null).
+     * @return this TrackedRecord
+     */
+    public TrackedRecord snapshot(String fieldName, Object value) {
+      this.originalValues.put(fieldName, value);
+      this.currentValues.put(fieldName, value);
+      this.changedFields.remove(fieldName);
+      return this;
+    }
+
+    /**
+     * Set the value of a field, and mark it as changed if the value differs from its snapshot.  A field
+     * without a snapshot is always marked as changed.
+     * @param fieldName - String
+     * @param value - the new value (may be null).
+     * @return this TrackedRecord
+     */
+    public TrackedRecord setValue(String fieldName, Object value) {
+      this.currentValues.put(fieldName, value);
+      if (this.originalValues.containsKey(fieldName) && sameValue(this.originalValues.get(fieldName), value)) {
+        this.changedFields.remove(fieldName);
+      } else {
+        this.changedFields.add(fieldName);
+      }
+      return this;
+    }
+
+    /**
+     * Return the current value of a field: the value set, or else the snapshot value.
+     * @param fieldName - String
+     * @return Object, or null
+     */
+    public Object getValue(String fieldName) {
+      return this.currentValues.get(fieldName);
+    }
+
+    public String getRecordId() {
+      return this.recordId;
+    }
+
+    public String getObjectName() {
+      return this.objectName;
+    }
+
+    public boolean isChanged() {
+      return !this.changedFields.isEmpty();
+    }
+
+    public boolean isChanged(String fieldName) {
+      return this.changedFields.contains(fieldName);
+    }
+
+    public Set<String> getChangedFields() {
+      return this.changedFields;
+    }
+
+    /**
+     * Return a Record containing the ID and only the changed fields, or null if nothing changed.
+     * @return Record or null
+     */
+    public Record toRecord() {
+      if (!this.isChanged()) {
+        return null;
+      }
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      Record record = recordService.newRecordWithId(this.objectName, this.recordId);
+      for (String fieldName : this.changedFields) {
+        record.setValue(fieldName, this.currentValues.get(fieldName));
+      }
+      return record;
+    }
+
+    /**
+     * Save the changed fields, and make the saved values the new snapshot.  Does nothing if nothing changed.
+     * @return boolean.  True if the record was saved.
+     */
+    public boolean save() {
+      Record record = this.toRecord();
+      if (record == null) {
+        return false;
+      }
+      Util.saveRecord(record);
+      this.markSaved();
+      return true;
+    }
+
+    /**
+     * Save the changed fields of the changed records in one batch (see Util.batchSaveRecords), and make
+     * the saved values the new snapshots.  Unchanged records are skipped.
+     * @param trackedRecords - List<TrackedRecord>
+     * @return int.  The number of records saved.
+     */
+    public static int saveChanged(List<TrackedRecord> trackedRecords) {
+      List<Record> records = VaultCollections.newList();
+      List<TrackedRecord> saved = VaultCollections.newList();
+      for (TrackedRecord trackedRecord : trackedRecords) {
+        Record record = trackedRecord.toRecord();
+        if (record != null) {
+          records.add(record);
+          saved.add(trackedRecord);
+        }
+      }
+      if (records.size() > 0) {
+        Util.batchSaveRecords(records);
+        for (TrackedRecord trackedRecord : saved) {
+          trackedRecord.markSaved();
+        }
+      }
+      return records.size();
+    }
+
+    private void markSaved() {
+      for (String fieldName : this.changedFields) {
+        this.originalValues.put(fieldName, this.currentValues.get(fieldName));
+      }
+      this.changedFields.clear();
+    }
+
+    static boolean sameValue(Object value1, Object value2) {
+      if (value1 == null || value2 == null) {
+        return value1 == value2;
+      }
+      if (value1 instanceof BigDecimal && value2 instanceof BigDecimal) {
+        return ((BigDecimal) value1).compareTo((BigDecimal) value2) == 0;
+      }
+      return value1.equals(value2);
+    }
+}
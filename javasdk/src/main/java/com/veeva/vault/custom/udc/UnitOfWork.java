@@ -0,0 +1,263 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.ServiceLocator;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.data.Record;
+import com.veeva.vault.sdk.api.data.RecordService;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the record and document writes of a request, and writes them at a defined commit point in as
+ * few batch calls as possible:
+ *   1. the changed document versions (see DocumentVersionWriter)
+ *   2. per object: one batch save of the new records, the saved records and the merged field updates
+ *   3. per object: one batch delete
+ * Objects are written in the order they were first registered.  Repeated field updates to the same record
+ * are merged into one Record.  Records are written with BatchWriter (all-or-nothing), so a failure rolls
+ * back the transaction.
+ *
+ * While a unit of work is active in the request, Util.saveRecord() and Util.deleteRecord() register their
+ * record instead of writing it, so that code called from the action (e.g. AgendaApp) joins the unit of work.
+ * Writes are not visible to queries until commit().
+ *
+ * Example usage:
+ *
+ *    UnitOfWork unitOfWork = UnitOfWork.begin();
+ *    Record newItem = unitOfWork.insert("agenda_item__c");
+ *    newItem.setValue("agenda__c", agendaId);
+ *    unitOfWork.update("agenda__c", agendaId, "status__c", "active__c");
+ *    unitOfWork.delete("agenda_item_move__c", inputRecordId);
+ *    unitOfWork.commit();
+ *
+ * begin() while a unit of work is already active joins it; only the outermost commit() writes.  commit()
+ * deactivates the unit of work before writing, so that triggers fired by its writes write immediately.
+ */
+
+@UserDefinedClassInfo
+public class UnitOfWork implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "UnitOfWork.current";
+
+    private boolean active;
+    private int depth;
+
+    private List<String> objectNames;              // objects in the order first registered
+    private Map<String, List<Record>> saves;       // object -> new records and saved records
+    private Map<String, Record> updates;           // "object:id" -> merged field updates
+    private Map<String, List<Record>> deletes;     // object -> deleted records
+    private DocumentVersionWriter documentWriter;
+
+    private int batchCount;
+    private int recordCount;
+
+    private UnitOfWork() {
+      this.active = true;
+      this.depth = 0;
+      this.objectNames = VaultCollections.newList();
+      this.saves = VaultCollections.newMap();
+      this.updates = VaultCollections.newMap();
+      this.deletes = VaultCollections.newMap();
+      this.documentWriter = new DocumentVersionWriter();
+      this.batchCount = 0;
+      this.recordCount = 0;
+    }
+
+    /**
+     * Start a unit of work in the current request, or join the one already active.
+     * @return UnitOfWork
+     */
+    public static UnitOfWork begin() {
+      UnitOfWork unitOfWork = current();
+      if (unitOfWork == null) {
+        unitOfWork = new UnitOfWork();
+        RequestContext.get().setValue(CONTEXT_KEY, unitOfWork);
+      }
+      unitOfWork.depth++;
+      return unitOfWork;
+    }
+
+    /**
+     * Return the active unit of work of the current request, or null if there is none.
+     * @return UnitOfWork or null
+     */
+    public static UnitOfWork current() {
+      UnitOfWork unitOfWork = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(UnitOfWork.class)
+      );
+      return (unitOfWork != null && unitOfWork.active) ? unitOfWork : null;
+    }
+
+    /**
+     * Register a new record, and return it so that its fields can be set.
+     * @param objectName - String.  Name of the Vault Object.
+     * @return Record
+     */
+    public Record insert(String objectName) {
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      Record record = recordService.newRecord(objectName);
+      this.save(record);
+      return record;
+    }
+
+    /**
+     * Register a record to be saved as-is (a new record, or an existing record with an ID).
+     * @param record - Record
+     * @return this UnitOfWork
+     */
+    public UnitOfWork save(Record record) {
+      this.recordsFor(this.saves, record.getObjectName()).add(record);
+      return this;
+    }
+
+    /**
+     * Register a field update to an existing record.  Updates to the same record are merged; a later
+     * value of the same field replaces the earlier one.
+     * @param objectName - String.  Name of the Vault Object.
+     * @param recordId - String.
+     * @param fieldName - String.
+     * @param value - the new value (may be null).
+     * @return this UnitOfWork
+     */
+    public UnitOfWork update(String objectName, String recordId, String fieldName, Object value) {
+      String key = objectName + ":" + recordId;
+      Record record = this.updates.get(key);
+      if (record == null) {
+        RecordService recordService = ServiceLocator.locate(RecordService.class);
+        record = recordService.newRecordWithId(objectName, recordId);
+        this.updates.put(key, record);
+        this.recordsFor(this.saves, objectName).add(record);
+      }
+      record.setValue(fieldName, value);
+      return this;
+    }
+
+    /**
+     * Register the deletion of a record.  Pending field updates to the record are discarded.
+     * @param objectName - String.  Name of the Vault Object.
+     * @param recordId - String.
+     * @return this UnitOfWork
+     */
+    public UnitOfWork delete(String objectName, String recordId) {
+      RecordService recordService = ServiceLocator.locate(RecordService.class);
+      return this.delete(recordService.newRecordWithId(objectName, recordId));
+    }
+
+    /**
+     * Register the deletion of a record.  Pending field updates to the record are discarded.
+     * @param record - Record.  Must have an ID.
+     * @return this UnitOfWork
+     */
+    public UnitOfWork delete(Record record) {
+      String objectName = record.getObjectName();
+      Record update = this.updates.remove(objectName + ":" + record.getValue("id", ValueType.STRING));
+      if (update != null) {
+        this.saves.get(objectName).remove(update);
+      }
+      this.recordsFor(this.deletes, objectName).add(record);
+      return this;
+    }
+
+    /**
+     * Register a document field update.  The update is dropped if the new value equals the current value.
+     * @param docVersionId - String.  Document version ID.
+     * @param fieldName - String.
+     * @param currentValue - the field's value as queried (may be null).
+     * @param newValue - the value to save (may be null).
+     * @return this UnitOfWork
+     */
+    public UnitOfWork updateDocument(String docVersionId, String fieldName, Object currentValue, Object newValue) {
+      this.documentWriter.setValue(docVersionId, fieldName, currentValue, newValue);
+      return this;
+    }
+
+    /**
+     * Write everything registered, unless this commit() closes a joined begin().  The unit of work is
+     * no longer active afterward.
+     */
+    public void commit() {
+
+      if (--this.depth > 0) {
+        return;
+      }
+      this.active = false;
+
+      this.documentWriter.save();
+      this.batchCount += this.documentWriter.getChunkCount();
+      this.recordCount += this.documentWriter.getUpdatedCount();
+
+      for (String objectName : this.objectNames) {
+        this.write(this.saves.get(objectName), false);
+      }
+      for (String objectName : this.objectNames) {
+        this.write(this.deletes.get(objectName), true);
+      }
+
+      this.saves.clear();
+      this.updates.clear();
+      this.deletes.clear();
+    }
+
+    /**
+     * Discard everything registered, and deactivate the unit of work.
+     */
+    public void discard() {
+      this.active = false;
+      this.depth = 0;
+      this.objectNames.clear();
+      this.saves.clear();
+      this.updates.clear();
+      this.deletes.clear();
+      this.documentWriter = new DocumentVersionWriter();
+    }
+
+    /**
+     * Return the number of batch calls made by commit().
+     * @return int
+     */
+    public int getBatchCount() {
+      return this.batchCount;
+    }
+
+    /**
+     * Return the number of records and documents written by commit().
+     * @return int
+     */
+    public int getRecordCount() {
+      return this.recordCount;
+    }
+
+    @Override
+    public String toString() {
+      return "Unit of work: " + this.recordCount + " records/documents written in " + this.batchCount + " batch call(s)";
+    }
+
+    private List<Record> recordsFor(Map<String, List<Record>> recordsByObject, String objectName) {
+      if (!this.objectNames.contains(objectName)) {
+        this.objectNames.add(objectName);
+      }
+      List<Record> records = recordsByObject.get(objectName);
+      if (records == null) {
+        records = VaultCollections.newList();
+        recordsByObject.put(objectName, records);
+      }
+      return records;
+    }
+
+    private void write(List<Record> records, boolean delete) {
+      if (records == null || records.isEmpty()) {
+        return;
+      }
+      BatchWriter batchWriter = new BatchWriter();
+      BatchWriteReport report = delete ? batchWriter.delete(records) : batchWriter.save(records);
+      this.batchCount += report.getChunkCount();
+      this.recordCount += records.size();
+    }
+}
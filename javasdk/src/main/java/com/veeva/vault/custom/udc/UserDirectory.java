@@ -0,0 +1,155 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.ValueType;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+import com.veeva.vault.sdk.api.query.QueryExecutionResult;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves user ID's to UserInfo (name, email and Security Profile key) with one 'contains' query per
+ * chunk of ContainsQuery.DEFAULT_BATCH_SIZE users, instead of one query per user.  The directory lives in
+ * the RequestContext, and resolved users are kept for the remainder of the request, or until Util saves
+ * user__sys records.
+ *
+ * Example usage:
+ *
+ *    Map<String, UserInfo> users = UserDirectory.get().getUsers(userIds);
+ *    for (String userId : userIds) {
+ *      UserInfo user = users.get(userId);   // null if there is no such user
+ *      ...
+ *    }
+ *
+ * To resolve users one at a time without a query per user, request() all of the ID's first; the first
+ * getUser() of an unresolved ID resolves every pending ID together.
+ */
+
+@UserDefinedClassInfo
+public class UserDirectory implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "UserDirectory.users";
+
+    private static final String QUERY =
+      "select id, name__v, email__sys, security_profile__sysr.profile_key__sys" +
+      "  from user__sys" +
+      " where id contains " + QueryUtil.CONTAINS_LIST +
+      " order by id";
+
+    private Map<String, UserInfo> users;   // resolved ID's; an ID with no user maps to null
+    private Set<String> pending;
+
+    private UserDirectory() {
+      this.users = VaultCollections.newMap();
+      this.pending = VaultCollections.newSet();
+    }
+
+    /**
+     * Return the UserDirectory for the current request.
+     * @return UserDirectory
+     */
+    public static UserDirectory get() {
+      UserDirectory directory = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(UserDirectory.class)
+      );
+      if (directory == null) {
+        directory = new UserDirectory();
+        RequestContext.get().setValue(CONTEXT_KEY, directory);
+      }
+      return directory;
+    }
+
+    /**
+     * Queue user ID's to be resolved by the next getUser() or getUsers() call that needs a query.
+     * @param userIds - Collection<String>
+     * @return this UserDirectory
+     */
+    public UserDirectory request(Collection<String> userIds) {
+      for (String userId : userIds) {
+        if (userId != null && !this.users.containsKey(userId)) {
+          this.pending.add(userId);
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Return the UserInfo for a user ID, or null if there is no such user.
+     * @param userId - String
+     * @return UserInfo or null
+     */
+    public UserInfo getUser(String userId) {
+      if (userId == null) {
+        return null;
+      }
+      if (!this.users.containsKey(userId)) {
+        this.pending.add(userId);
+        this.resolve();
+      }
+      return this.users.get(userId);
+    }
+
+    /**
+     * Return the UserInfo of each user ID, keyed by user ID.  ID's that do not identify a user are not
+     * included in the map.  Unresolved ID's are resolved together.
+     * @param userIds - Collection<String>
+     * @return Map<String, UserInfo>
+     */
+    public Map<String, UserInfo> getUsers(Collection<String> userIds) {
+      this.request(userIds);
+      this.resolve();
+      Map<String, UserInfo> result = VaultCollections.newMap();
+      for (String userId : userIds) {
+        UserInfo user = this.users.get(userId);
+        if (user != null) {
+          result.put(userId, user);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Discard all resolved users in the current request, if the directory has been used.
+     */
+    public static void invalidate() {
+      UserDirectory directory = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(UserDirectory.class)
+      );
+      if (directory != null) {
+        directory.users.clear();
+      }
+    }
+
+    private void resolve() {
+
+      if (this.pending.isEmpty()) {
+        return;
+      }
+
+      ContainsQuery containsQuery = QueryUtil.queryContains(QUERY, Util.toList(this.pending));
+      while (containsQuery.hasNext()) {
+        QueryExecutionResult result = containsQuery.next();
+        String userId = result.getValue("id", ValueType.STRING);
+        this.users.put(userId, new UserInfo(
+          userId,
+          result.getValue("name__v", ValueType.STRING),
+          result.getValue("email__sys", ValueType.STRING),
+          result.getValue("security_profile__sysr.profile_key__sys", ValueType.STRING)
+        ));
+      }
+
+      for (String userId : this.pending) {
+        if (!this.users.containsKey(userId)) {
+          this.users.put(userId, null);
+        }
+      }
+      this.pending.clear();
+    }
+}
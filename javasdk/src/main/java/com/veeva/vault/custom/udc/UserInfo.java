@@ -0,0 +1,53 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+
+/**
+ * The directory fields of a Vault user, as resolved by UserDirectory.
+ */
+
+@UserDefinedClassInfo
+public class UserInfo {
+
+    private static final String VAULT_OWNER_PROFILE = "vaultOwner";
+
+    private String id;
+    private String name;
+    private String email;
+    private String securityProfileKey;
+
+    public UserInfo(String id, String name, String email, String securityProfileKey) {
+      this.id = id;
+      this.name = name;
+      this.email = email;
+      this.securityProfileKey = securityProfileKey;
+    }
+
+    public String getId() {
+      return this.id;
+    }
+
+    /**
+     * Return the user's full name (name__v).
+     * @return String
+     */
+    public String getName() {
+      return this.name;
+    }
+
+    public String getEmail() {
+      return this.email;
+    }
+
+    /**
+     * Return the key of the user's Security Profile (security_profile__sysr.profile_key__sys), e.g. "vaultOwner".
+     * @return String
+     */
+    public String getSecurityProfileKey() {
+      return this.securityProfileKey;
+    }
+
+    public boolean isVaultOwner() {
+      return VAULT_OWNER_PROFILE.equals(this.securityProfileKey);
+    }
+}
@@ -2,9 +2,6 @@ package com.veeva.vault.custom.udc;
 
 import com.veeva.vault.sdk.api.core.*;
 import com.veeva.vault.sdk.api.data.Record;
-import com.veeva.vault.sdk.api.data.RecordBatchDeleteRequest;
-import com.veeva.vault.sdk.api.data.RecordBatchSaveRequest;
-import com.veeva.vault.sdk.api.data.RecordService;
 import com.veeva.vault.sdk.api.document.DocumentService;
 import com.veeva.vault.sdk.api.document.DocumentVersion;
 import com.veeva.vault.sdk.api.notification.NotificationMessage;
@@ -13,12 +10,13 @@ import com.veeva.vault.sdk.api.notification.NotificationService;
 import com.veeva.vault.sdk.api.query.QueryExecutionResult;
 import com.veeva.vault.sdk.api.query.QueryResponse;
 import com.veeva.vault.sdk.api.query.QueryResult;
-import com.veeva.vault.sdk.api.query.QueryService;
 import com.veeva.vault.sdk.api.role.DocumentRole;
 import com.veeva.vault.sdk.api.role.DocumentRoleService;
 import com.veeva.vault.sdk.api.role.GetDocumentRolesResponse;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -40,28 +38,39 @@ import java.util.Set;
   getObjectTypeName - Return the Object Type name for the record.  Assumes the values passed as arguments are valid.
   getRoleId - Return the object record ID from the Application Role object for the given role name.
   getRoleName - Return the api name of the Application role for the given Application Role record ID.
+  requestRoleNames - Queue Application Role record ID's for getRoleName, to be resolved in one query per batch.
   getUSCountryId - Return the record ID from the Country Object record for the United States.
   getSinglePicklistValue - Return the value from a single-pick picklist field, or null if the field value is null.
   stringifyFieldValues - Concatenates a field value across one or more records in a query response.
-  difference - Return a list of Strings from list1/set1 that are not also in list2/set2.
+  difference - Return a list of Strings from list1/set1 that are not also in list2/set2, in O(n + m) time
+     (see SetAlgebra).
   toList - Convert a collection (e.g. Set) to a List, and return the List.
-  getDocumentRoleUsers - return a list of User Ids of users currently in the document's indicated role
+  getDocumentRoleUsers - return a list of User Ids of users currently in the document's indicated role, or
+     the users in several roles on many documents at once
   getDocumentOwner - Return the UserID of the indicated document's Owner
   getObjectRecordURL - return a String containing the Vault UI URL for an object record
   getDocumentURL - return a String containing the Vault UI URL for a document
   sendNotificationSimple - Send a simple notification email
   getUserInDocumentRole - return the UserId of the user in the specified document role for the specified document
+  requestUsersInDocumentRole - Queue document Id's for getUserInDocumentRole, to be resolved in one query per batch.
   getUserFullName - Return the full name for a user based on the User's user ID.
+  requestUserFullNames - Queue user ID's for getUserFullName and isVaultOwner, to be resolved in one query per batch.
   isVaultOwner - Return a boolean value to indicate whether a user has the Vault Owner Security Profile.
   getVaultDNS - returns a String containing the Vault's dns
   getObjectRecordUrl - return a full URL for an object record
   getDocumentUrl - return a full URL for a document version
   getCountriesInRegion - Return a list of Country object record ID's for records for the specified region.
   equals - Return a boolean to indicate if 2 strings are equal
-  batchSaveRecords - save a list of records
-  saveRecord - save a single Record
-  batchDeleteRecords - delete a list of records
-  deleteRecord - delete a single Record
+  batchSaveRecords - save a list of records (in chunks; see BatchWriter)
+  saveRecord - save a single Record (registered with the active UnitOfWork, if any)
+  batchDeleteRecords - delete a list of records (in chunks; see BatchWriter)
+  deleteRecord - delete a single Record (registered with the active UnitOfWork, if any)
+  saveDocumentVersions - save a list of document versions (see DocumentVersionWriter to skip unchanged documents)
+  currentTimeMillis - Return the current time in milliseconds since the epoch, for measuring elapsed time.
+
+  The reference-data lookups getTypeName, getObjectTypeName, getRoleId, getRoleName and getUSCountryId are
+  resolved through LookupCoalescer, so each value is queried at most once per request (and many at once
+  if requested up front).  getCountriesInRegion is memoized by the QueryCache, when enabled.
  */
 
 @UserDefinedClassInfo
@@ -170,9 +179,10 @@ public class Util {
    * @return String.  ID of record.
    */
   public static String getRecordID(String objectName, String fieldName, String fieldValue) {
-    QueryService qs = ServiceLocator.locate(QueryService.class);
-    QueryResponse qr = qs.query("select id from "+objectName+" where "+fieldName+" = '"+fieldValue+"'");
-    return qr.streamResults().iterator().next().getValue("id", ValueType.STRING);
+    String query = VqlTemplate.get("select id from "+objectName+" where "+fieldName+" = :fieldValue")
+      .setString("fieldValue", fieldValue)
+      .render();
+    return QueryUtil.queryOne(query).getValue("id", ValueType.STRING);
   }
 
   /**
@@ -185,9 +195,10 @@ public class Util {
    * @return <T> T - Field value to return
    */
     public static <T> T getRecordValue(String objectName, String fieldName, String recordID, ValueType<T> valueType) {
-      QueryService qs = ServiceLocator.locate(QueryService.class);
-      QueryResponse qr = qs.query("select "+fieldName+" from "+objectName+" where id = '"+recordID+"'");
-      return qr.streamResults().iterator().next().getValue(fieldName, valueType);
+      String query = VqlTemplate.get("select "+fieldName+" from "+objectName+" where id = :recordId")
+        .setString("recordId", recordID)
+        .render();
+      return QueryUtil.queryOne(query).getValue(fieldName, valueType);
     }
 
   /**
@@ -196,11 +207,10 @@ public class Util {
    * @return String - api name of the object type
    */
     public static String getTypeName(String objectTypeID) {
-
-      QueryService qs = ServiceLocator.locate(QueryService.class);
-      String query = "select api_name__v from object_type__v where id = '"+objectTypeID+"'";
-      QueryResponse qr = qs.query(query);
-      return qr.streamResults().iterator().next().getValue("api_name__v", ValueType.STRING);
+      return LookupCoalescer.forQuery(
+        "select id, api_name__v from object_type__v where id contains " + QueryUtil.CONTAINS_LIST + " order by id",
+        "id", "api_name__v", false
+      ).get(objectTypeID);
     }
 
    /**
@@ -220,17 +230,13 @@ public class Util {
      * @return id
      */
     public static String getObjectTypeName(String objectName, String recordId) {
-      QueryService queryService = ServiceLocator.locate(QueryService.class);
-      QueryResponse queryResponse = queryService.query(
-        "select object_type__vr.api_name__v" +
-        "  from " +objectName +
-        " where id = '"+recordId+"'"
-      );
-      return queryResponse
-              .streamResults()
-              .findFirst()
-              .get()
-              .getValue("object_type__vr.api_name__v", ValueType.STRING);
+      return LookupCoalescer.forQuery(
+        "select id, object_type__vr.api_name__v" +
+        "  from " + objectName +
+        " where id contains " + QueryUtil.CONTAINS_LIST +
+        " order by id",
+        "id", "object_type__vr.api_name__v", false
+      ).get(recordId);
     }
 
   /**
@@ -238,19 +244,36 @@ public class Util {
    * @return
    */
     public static String getRoleId(String roleName) {
-      QueryService qs = ServiceLocator.locate(QueryService.class);
-      QueryResponse qr = qs.query("select id from application_role__v where api_name__v = '"+roleName+"'");
-      return qr.streamResults().iterator().next().getValue("id", ValueType.STRING);
+      return LookupCoalescer.forQuery(
+        "select api_name__v, id from application_role__v" +
+        " where api_name__v contains " + QueryUtil.CONTAINS_LIST +
+        " order by api_name__v, id",
+        "api_name__v", "id", false
+      ).get(roleName);
     }
 
     /**
      * getRoleName - Return the api name of the Application role for the given Application Role record ID.
+     * Lookups are coalesced across the request; see requestRoleNames().
      */
     public static String getRoleName(String applicationRoleRecordId) {
-      QueryExecutionResult queryResult = QueryUtil.queryOne(
-        "select api_name__v from application_role__v where id = '"+applicationRoleRecordId+"'"
+      return roleNameLookup().get(applicationRoleRecordId);
+    }
+
+    /**
+     * Queue Application Role record ID's for getRoleName(), so that they are resolved together with one query
+     * per batch on the first call to getRoleName().
+     * @param applicationRoleRecordIds - Collection<String>
+     */
+    public static void requestRoleNames(Collection<String> applicationRoleRecordIds) {
+      roleNameLookup().request(applicationRoleRecordIds);
+    }
+
+    private static LookupCoalescer roleNameLookup() {
+      return LookupCoalescer.forQuery(
+        "select id, api_name__v from application_role__v where id contains " + QueryUtil.CONTAINS_LIST + " order by id",
+        "id", "api_name__v", false
       );
-      return queryResult.getValue("api_name__v", ValueType.STRING);
     }
 
   /**
@@ -258,9 +281,12 @@ public class Util {
    * @return String. record ID
    */
     public static String getUSCountryId() {
-      QueryService qs = ServiceLocator.locate(QueryService.class);
-      QueryResponse qr = qs.query("select id from country__v where abbreviation__c = 'US'");
-      return qr.streamResults().iterator().next().getValue("id", ValueType.STRING);
+      return LookupCoalescer.forQuery(
+        "select abbreviation__c, id from country__v" +
+        " where abbreviation__c contains " + QueryUtil.CONTAINS_LIST +
+        " order by abbreviation__c, id",
+        "abbreviation__c", "id", false
+      ).get("US");
     }
 
   /**
@@ -311,36 +337,13 @@ public class Util {
 
 
     /**
-     * Return a list of Strings from list1 that are not also in list2.
+     * Return a list of Strings from list1 that are not also in list2, in list1's order.  See SetAlgebra.
      * @param list1
      * @param list2
      * @return List<String>
      */
     public static List<String> difference(List<String> list1, List<String> list2) {
-
-      List<String> result = VaultCollections.newList();
-      Iterator<String> iter1 = list1.iterator();
-
-      while (iter1.hasNext()) {
-
-        String item1 = iter1.next();
-        Iterator<String> iter2 = list2.iterator();
-        boolean found = false;
-
-        while (iter2.hasNext()) {
-          String item2 = iter2.next();
-          if (item1.equals(item2)) {
-            found = true;
-            break;
-          }
-        }
-
-        if (!found) {
-          result.add(item1);
-        }
-      }
-
-      return result;
+      return SetAlgebra.difference(list1, list2);
     }
 
   /**
@@ -350,7 +353,7 @@ public class Util {
    * @return List<String>
    */
     public static List<String> difference(Set<String> set1, Set<String> set2) {
-      return difference(toList(set1), toList(set2));
+      return SetAlgebra.difference(set1, set2);
     }
 
   /**
@@ -388,9 +391,20 @@ public class Util {
    * @return List<String> - collection of User Id's
    */
     public static List<String> getDocumentRoleUsers(String documentVersionId, String roleName) {
-      DocumentService documentService = ServiceLocator.locate(DocumentService.class);
-      DocumentVersion docVersion = documentService.newVersionWithId(documentVersionId);
-      return getDocumentRoleUsers(docVersion, roleName);
+      return DocumentRoleResolver
+        .forVersions(VaultCollections.asList(documentVersionId), VaultCollections.asList(roleName))
+        .getUsers(documentVersionId, roleName);
+    }
+
+  /**
+   * Return the users currently in the indicated roles on many documents, with one DocumentRoleService call
+   * per role per chunk of documents.  See DocumentRoleResolver.
+   * @param documentVersionIds - List<String> version ids of documents
+   * @param roleNames - Collection<String> api names of roles
+   * @return DocumentRoles - user Id's keyed by document version id and role name
+   */
+    public static DocumentRoles getDocumentRoleUsers(List<String> documentVersionIds, Collection<String> roleNames) {
+      return DocumentRoleResolver.forVersions(documentVersionIds, roleNames);
     }
 
   /**
@@ -503,7 +517,8 @@ public class Util {
 
   /**
    * Return the UserId of the user in the specified document role for the specified document.
-   *   Return null if there is no user in the specified role.
+   *   Return null if there is no user in the specified role.  If the role has several users, the one with
+   *   the lowest user Id is returned.
    *
    * @param docId - BigDecimal or int -  the document's document Id
    * @param roleName - String - name of the role
@@ -513,36 +528,48 @@ public class Util {
       return getUserInDocumentRole(docId.intValue(), roleName);
     }
     public static String getUserInDocumentRole(int intDocId, String roleName) {
+      return documentRoleLookup(roleName).get(LookupCoalescer.numericKey(intDocId));
+    }
 
-      QueryExecutionResult queryResult = QueryUtil.queryOne(
-        "select user__sys " +
-          "from doc_role__sys " +
-          "where document_id = " + intDocId +
-          " and role_name__sys = '"+roleName+"'"
-      );
-      if (queryResult == null) {
-        return null;
-      } else {
-        return queryResult.getValue("user__sys", ValueType.STRING);
-      }
+    /**
+     * Queue document Id's for getUserInDocumentRole() with the specified role, so that they are resolved
+     * together with one query per batch on the first call to getUserInDocumentRole() for the role.
+     * @param docIds - Collection<String> - document Id's, e.g. from LookupCoalescer.numericKey()
+     * @param roleName - String - name of the role
+     */
+    public static void requestUsersInDocumentRole(Collection<String> docIds, String roleName) {
+      documentRoleLookup(roleName).request(docIds);
+    }
 
+    private static LookupCoalescer documentRoleLookup(String roleName) {
+      // the rendered query keeps QueryUtil.CONTAINS_LIST for the coalescer to fill in
+      String query = VqlTemplate.get(
+        "select document_id, user__sys " +
+          "from doc_role__sys " +
+          "where role_name__sys = :roleName" +
+          " and document_id contains " + QueryUtil.CONTAINS_LIST +
+          " order by document_id, user__sys"
+      ).setString("roleName", roleName).render();
+      return LookupCoalescer.forQuery(query, "document_id", "user__sys", true);
     }
 
     /**
-     * Return the full name for a user based on the User's user ID.
+     * Return the full name for a user based on the User's user ID.  See UserDirectory; to resolve many
+     * users without a query per user, call requestUserFullNames() first, or use UserDirectory.getUsers().
      * @param userId - String. User's user ID
      * @return String. User's full name
      */
     public static String getUserFullName(String userId) {
+      return UserDirectory.get().getUser(userId).getName();
+    }
 
-      QueryService queryService = ServiceLocator.locate(QueryService.class);
-
-      QueryResponse queryResponse = queryService.query(
-        "select name__v from user__sys where id = " + userId
-      );
-
-      return queryResponse.streamResults().findFirst().get().getValue("name__v", ValueType.STRING);
-
+    /**
+     * Queue user ID's for getUserFullName() and isVaultOwner(), so that they are resolved together with one
+     * query per batch on the first call for any of them.
+     * @param userIds - Collection<String>
+     */
+    public static void requestUserFullNames(Collection<String> userIds) {
+      UserDirectory.get().request(userIds);
     }
 
     /**
@@ -553,20 +580,7 @@ public class Util {
      * @return boolean.  True if is a Vault Owner.
      */
     public static boolean isVaultOwner(String userId) {
-
-      QueryService queryService = ServiceLocator.locate(QueryService.class);
-
-      QueryResponse queryResponse = queryService.query(
-        "select security_profile__sysr.profile_key__sys from user__sys where id = '"+userId+"'"
-      );
-
-      String profileKey = queryResponse
-        .streamResults()
-        .findFirst()
-        .get()
-        .getValue("security_profile__sysr.profile_key__sys", ValueType.STRING);
-
-      return profileKey.equals("vaultOwner");
+      return UserDirectory.get().getUser(userId).isVaultOwner();
     }
 
     /**
@@ -578,9 +592,11 @@ public class Util {
     public static List<String> getCountriesInRegion(String regionId) {
       List<String> countryIds = VaultCollections.newList();
 
-      Iterator<QueryExecutionResult> iter = QueryUtil.query(
-        "select id from country__v where region__c = '"+regionId+"'"
-      ).streamResults().iterator();
+      String query = VqlTemplate.get("select id from country__v where region__c = :regionId")
+        .setString("regionId", regionId)
+        .render();
+
+      Iterator<QueryExecutionResult> iter = QueryUtil.query(query).streamResults().iterator();
 
       while (iter.hasNext()) {
         countryIds.add(iter.next().getValue("id", ValueType.STRING));
@@ -598,66 +614,83 @@ public class Util {
     }
 
     /**
-     * Save a list of records.
+     * Save a list of records, in chunks.  Throws a RollbackException if any record fails.  Use BatchWriter
+     * directly for best-effort saves that report per-record failures.
      * @param records
      */
     public static void batchSaveRecords(List<Record> records) {
-      RecordService recordService = ServiceLocator.locate(RecordService.class);
-      RecordBatchSaveRequest saveRequest = recordService
-        .newRecordBatchSaveRequestBuilder()
-        .withRecords(records)
-        .build();
-      recordService.batchSaveRecords(saveRequest)
-        .onErrors(batchOperationErrors -> {
-          batchOperationErrors.stream().findFirst().ifPresent(error -> {
-            String errMsg = error.getError().getMessage();
-            throw new RollbackException(
-              ErrorType.OPERATION_FAILED,
-              "An error occurred saving one or more records: " + errMsg
-            );
-          });
-        })
-        .execute();
+      new BatchWriter().save(records);
     }
 
     /**
-     * Save a single Record.
+     * Save a single Record.  If a UnitOfWork is active, the record is registered with it instead, and saved
+     * when the unit of work is committed.
      * @param record
      */
     public static void saveRecord(Record record) {
+      UnitOfWork unitOfWork = UnitOfWork.current();
+      if (unitOfWork != null) {
+        unitOfWork.save(record);
+        return;
+      }
       batchSaveRecords(VaultCollections.asList(record));
     }
 
     /**
-     *
+     * Delete a list of records, in chunks.  Throws a RollbackException if any record fails.  Use BatchWriter
+     * directly for best-effort deletes that report per-record failures.
      * @param records
      */
     public static void batchDeleteRecords(List<Record> records) {
-      RecordService recordService = ServiceLocator.locate(RecordService.class);
-      RecordBatchDeleteRequest deleteRequest = recordService
-        .newRecordBatchDeleteRequestBuilder()
-        .withRecords(records)
-        .build();
-      recordService.batchDeleteRecords(deleteRequest)
-        .onErrors(batchOperationErrors -> {
-          batchOperationErrors.stream().findFirst().ifPresent(error -> {
-            String errMsg = error.getError().getMessage();
-            throw new RollbackException(
-              ErrorType.OPERATION_FAILED,
-              "An error occurred deleting one or more records: " + errMsg
-            );
-          });
-        })
-        .execute();
+      new BatchWriter().delete(records);
     }
 
   /**
-   * Delete a single Record.
+   * Delete a single Record.  If a UnitOfWork is active, the deletion is registered with it instead.
    * @param record
    */
     public static void deleteRecord(Record record) {
+      UnitOfWork unitOfWork = UnitOfWork.current();
+      if (unitOfWork != null) {
+        unitOfWork.delete(record);
+        return;
+      }
       batchDeleteRecords(VaultCollections.asList(record));
     }
 
-}
+  /**
+   * Save a list of document versions.
+   * @param documentVersions
+   */
+    public static void saveDocumentVersions(List<DocumentVersion> documentVersions) {
+      QueryCache.invalidateDocuments();
+      LookupCoalescerRegistry.invalidate("documents");
+      DocumentService documentService = ServiceLocator.locate(DocumentService.class);
+      documentService.saveDocumentVersions(documentVersions);
+    }
 
+  /**
+   * Return the current time in milliseconds since the epoch.  Use the difference between two calls
+   * to measure elapsed time.
+   * @return long
+   */
+    public static long currentTimeMillis() {
+      return Instant.now().toEpochMilli();
+    }
+
+    // Discard request-cached query results and lookups that reference the objects being written.
+    static void invalidateCachedQueries(List<Record> records) {
+      Set<String> objectNames = VaultCollections.newSet();
+      for (Record record : records) {
+        objectNames.add(record.getObjectName());
+      }
+      for (String objectName : objectNames) {
+        QueryCache.invalidate(objectName);
+        LookupCoalescerRegistry.invalidate(objectName.toLowerCase());
+      }
+      if (objectNames.contains("user__sys")) {
+        UserDirectory.invalidate();
+      }
+    }
+
+}
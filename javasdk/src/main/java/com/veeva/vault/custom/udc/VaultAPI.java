@@ -10,6 +10,7 @@ import com.veeva.vault.sdk.api.json.JsonValueType;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Set;
 
 /*
  This class contains methods that wrap the Vault API in a convenient way.
@@ -33,15 +34,19 @@ import java.util.List;
 
  Methods in this class include:
    - cancelWorkflowTasks: initiate workflow actions on one or more workflows - cancel tasks
-   - executeQuery: execute a Vault API query
+   - executeQuery: execute a Vault API query (first page of results)
+   - streamQuery: execute a Vault API query, returning an iterator that fetches the result pages as needed
    - initiateDocumentUserAction: execute a document lifecycle user action based on the User Action api name
    - getDocumentUserActionName.  Returns the Document Lifecycle User Action (workflow or state change) name
      based on the User Action label.
    - initiateDocumentUserActionLabel: execute a document lifecycle user action based on the User Action label
+   - initiateBulkDocumentUserAction: execute a document lifecycle user action on many documents, in chunks
    - initiateDocumentWorklow: start a workflow for one or more documents (not for legacy workflows)
    - replaceWorkflowOwner: replace the owner of a given active workflow with a new user
    - initiateObjectRecordUserAction
+   - initiateBulkObjectRecordUserAction: initiate a User Action on many object records, in chunks
    - getObjecUserActionName
+   - getJobStatus: return the status of a Vault job, e.g. one started by a bulk user action
  */
 
 @UserDefinedClassInfo()
@@ -49,6 +54,9 @@ public class VaultAPI {
 
   static final String APIVersion = "v24.2";
 
+  // maximum number of documents or records per bulk user action call
+  public static final int BULK_ACTION_CHUNK_SIZE = 500;
+
   private String connection;
 
   private boolean succeeded;
@@ -71,6 +79,16 @@ public class VaultAPI {
     this.logger = new Logger(jobLogger);
   }
 
+  /**
+   * Use a Logger, e.g. a buffered Logger shared with the caller.
+   * @param logger - Logger
+   * @return this object instance
+   */
+  public VaultAPI setLogger(Logger logger) {
+    this.logger = logger;
+    return this;
+  }
+
   public VaultAPI setJobLogger(JobLogger jobLogger) {
     //replace the default Logger with a new Logger that will include job logs
     this.logger = new Logger(jobLogger);
@@ -145,64 +163,13 @@ public class VaultAPI {
    */
   public void initiateDocumentUserActionLabel(String docVersionId, String actionLabel) {
 
-    DocVersionIdParts docVersionIdParts = new DocVersionIdParts(docVersionId);
-    HttpResult httpResult;
-
-    this.succeeded = true;
-
-    StringBuilder path = new StringBuilder();
-    path
-      .append("/api/").append(APIVersion).append("/objects/documents/")
-      .append(docVersionIdParts.id)
-      .append("/versions/")
-      .append(docVersionIdParts.major)
-      .append("/")
-      .append(docVersionIdParts.minor)
-      .append("/lifecycle_actions");
-
-    HttpCallout httpCallout = new HttpCallout(this.connection);
-
-    httpResult = httpCallout.requestJson(HttpMethod.GET, path.toString(), this.logger);
-
-    if (httpResult.isError()) {
-      this.succeeded = false;
-      this.errorType = httpResult.getErrorType();
-      this.errorMessage = httpResult.getErrorMessage();
-      return;
-    }
-
-    String actionName = null;
-
-    JsonArray lifecycleActions = httpResult.getJsonObject().getValue("lifecycle_actions__v", JsonValueType.ARRAY);
-
-    for (int i = 0; i < lifecycleActions.getSize(); i++) {
-      JsonObject action = lifecycleActions.getValue(i, JsonValueType.OBJECT);
-      String label = action.getValue("label__v", JsonValueType.STRING);
-      if (label.equals(actionLabel)) {
-        actionName = action.getValue("name__v", JsonValueType.STRING);
-        break;
-      }
-    }
+    String actionName = this.lookupDocumentUserActionName(docVersionId, actionLabel);
 
     if (actionName == null) {
-      this.succeeded = false;
-      this.errorType = ErrorType.OPERATION_FAILED;
-      this.errorMessage = "An error occurred accessing Vault API \"Retrieve User Actions\".  " +
-        "Unable to find action \"" + actionLabel + "\"";
-      return;
+      return;  // failed() is true
     }
 
-    path.append("/").append(actionName);
-
-    httpResult = httpCallout.requestJson(HttpMethod.PUT, path.toString(), this.params, this.logger);
-
-    this.params.clear();  // set up for the next API
-
-    if (httpResult.isError()) {
-      this.succeeded = false;
-      this.errorType = httpResult.getErrorType();
-      this.errorMessage = httpResult.getErrorMessage();
-    }
+    this.initiateDocumentUserAction(docVersionId, actionName);
   }
 
   /**
@@ -213,52 +180,7 @@ public class VaultAPI {
    */
   public String getDocumentUserActionName(String docVersionId, String actionLabel) {
 
-    DocVersionIdParts docVersionIdParts = new DocVersionIdParts(docVersionId);
-    HttpResult httpResult;
-
-    this.succeeded = true;
-
-    StringBuilder path = new StringBuilder();
-    path
-      .append("/api/").append(APIVersion).append("/objects/documents/")
-      .append(docVersionIdParts.id)
-      .append("/versions/")
-      .append(docVersionIdParts.major)
-      .append("/")
-      .append(docVersionIdParts.minor)
-      .append("/lifecycle_actions");
-
-    HttpCallout httpCallout = new HttpCallout(this.connection);
-
-    httpResult = httpCallout.requestJson(HttpMethod.GET, path.toString(), this.logger);
-
-    if (httpResult.isError()) {
-      this.succeeded = false;
-      this.errorType = httpResult.getErrorType();
-      this.errorMessage = httpResult.getErrorMessage();
-      return null;
-    }
-
-    String actionName = null;
-
-    JsonArray lifecycleActions = httpResult.getJsonObject().getValue("lifecycle_actions__v", JsonValueType.ARRAY);
-
-    for (int i = 0; i < lifecycleActions.getSize(); i++) {
-      JsonObject action = lifecycleActions.getValue(i, JsonValueType.OBJECT);
-      String label = action.getValue("label__v", JsonValueType.STRING);
-      if (label.equals(actionLabel)) {
-        actionName = action.getValue("name__v", JsonValueType.STRING);
-        break;
-      }
-    }
-
-    if (actionName == null) {
-      this.succeeded = false;
-      this.errorType = ErrorType.OPERATION_FAILED;
-      this.errorMessage = "An error occurred accessing Vault API \"Retrieve User Actions\".  " +
-        "Unable to find action \"" + actionLabel + "\"";
-      return null;
-    }
+    String actionName = this.lookupDocumentUserActionName(docVersionId, actionLabel);
 
     this.params.clear();  // set up for the next API
 
@@ -303,16 +225,114 @@ public class VaultAPI {
     }
   }
 
+  /**
+   * initiateBulkDocumentUserAction.  Execute a Document Lifecycle User Action on many documents with the
+   *   "Initiate Bulk Document User Actions" API, in chunks of BULK_ACTION_CHUNK_SIZE documents.  All of the
+   *   documents must be in the same lifecycle and state.  Returns the outcome per document version ID.
+   *
+   *   Vault runs each chunk as a job, so the result reports whether each chunk was accepted, and the job ID's:
+   *   every document in an accepted chunk is reported as submitted, not succeeded, since the job may still
+   *   fail for it; the caller must check the documents' state once the job has run.  Every document in a
+   *   rejected chunk is reported as failed with the chunk's error.  Once the Vault API
+   *   burst limit is low, the remaining chunks are not sent, and their documents are reported as failed with
+   *   API_LIMIT_EXCEEDED.  failed() is true if any document failed.
+   *
+   * @param docVersionIds - List<String>.  Document version ID's.
+   * @param lifecycle - String.  Lifecycle name of the documents.
+   * @param state - String.  Lifecycle state name of the documents.
+   * @param actionName - String.  API name of the user action (see getDocumentUserActionName).
+   * @return BulkActionResult
+   */
+  public BulkActionResult initiateBulkDocumentUserAction(
+    List<String> docVersionIds, String lifecycle, String state, String actionName
+  ) {
+
+    BulkActionResult result = new BulkActionResult();
+
+    String path = "/api/" + APIVersion + "/objects/documents/lifecycle_actions/" + actionName;
+
+    HttpCallout httpCallout = new HttpCallout(this.connection);
+
+    for (int start = 0; start < docVersionIds.size(); start += BULK_ACTION_CHUNK_SIZE) {
+
+      if (start > 0 && HttpCallout.isBurstLimitLow()) {
+        this.addNotSent(result, docVersionIds.subList(start, docVersionIds.size()));
+        break;
+      }
+
+      List<String> chunk = docVersionIds.subList(start, Math.min(start + BULK_ACTION_CHUNK_SIZE, docVersionIds.size()));
+
+      StringBuilder docIds = new StringBuilder(chunk.size() * 16);
+      for (String docVersionId : chunk) {
+        DocVersionIdParts docVersionIdParts = new DocVersionIdParts(docVersionId);
+        if (docIds.length() > 0) {
+          docIds.append(",");
+        }
+        docIds
+          .append(docVersionIdParts.id).append(":")
+          .append(docVersionIdParts.major).append(":")
+          .append(docVersionIdParts.minor);
+      }
+
+      List<HttpParam> chunkParams = VaultCollections.newList();
+      chunkParams.addAll(this.params);
+      chunkParams.add(new HttpParam("docIds", docIds.toString()));
+      chunkParams.add(new HttpParam("lifecycle", lifecycle));
+      chunkParams.add(new HttpParam("state", state));
+
+      HttpResult httpResult = httpCallout.requestJson(HttpMethod.PUT, path, chunkParams, this.logger);
+      result.addCall();
+
+      if (httpResult.isError()) {
+        for (String docVersionId : chunk) {
+          result.addFailure(docVersionId, httpResult.getErrorType(), httpResult.getErrorMessage());
+        }
+        continue;
+      }
+
+      for (String docVersionId : chunk) {
+        result.addSubmitted(docVersionId);
+      }
+      JsonObject response = httpResult.getJsonObject();
+      if (response.contains("data")) {
+        JsonObject data = response.getValue("data", JsonValueType.OBJECT);
+        if (data.contains("job_id")) {
+          result.addJobId(data.getValue("job_id", JsonValueType.NUMBER).toPlainString());
+        }
+      }
+    }
+
+    this.params.clear();  // set up for the next API
+
+    this.succeeded = !result.hasFailures();
+    if (!this.succeeded) {
+      String firstFailedId = result.getFailedIds().get(0);
+      this.errorType = result.getErrorType(firstFailedId);
+      this.errorMessage = result.getFailedIds().size() + " document(s) failed: " + result.getErrorMessage(firstFailedId);
+    }
+
+    return result;
+  }
+
+  // Fail the ID's of the chunks not sent because the burst limit is low, so that the caller can requeue them.
+  private void addNotSent(BulkActionResult result, List<String> ids) {
+    this.logger.info("Vault API burst limit is low; " + ids.size() + " item(s) not sent, to be retried in a later run");
+    for (String id : ids) {
+      result.addFailure(id, ErrorType.API_LIMIT_EXCEEDED, "Not sent: the Vault API burst limit is low");
+    }
+  }
+
   /**
    * executeQuery.  Execute a Vault API query.
    *
-   * This is needed for queries that are not supported by the JSDK.
+   * This is needed for queries that are not supported by the JSDK.  Only the first page of results is
+   * returned; use streamQuery() to read all pages.
    *
    * @param query - String - the query
    */
   public JsonArray executeQuery(String query) {
 
-    HttpCallout httpCallout = new HttpCallout(this.connection);
+    HttpCallout httpCallout = new HttpCallout(this.connection).setIdempotent(true);  // queries are safe to repeat
     HttpResult httpResult;
 
     this.succeeded = true;
@@ -321,6 +341,9 @@ public class VaultAPI {
 
     this.params.add(new HttpParam("q", query));
 
+    QueryProfiler profiler = QueryProfiler.get();
+    long startMillis = profiler != null ? Util.currentTimeMillis() : 0;
+
     httpResult = httpCallout.requestJson(HttpMethod.POST, path.toString(), this.params, this.logger);
 
     this.params.clear();  // set up for the next API
@@ -332,7 +355,33 @@ public class VaultAPI {
       return null;
     }
 
-    return httpResult.getJsonObject().getValue("data", JsonValueType.ARRAY);
+    JsonArray data = httpResult.getJsonObject().getValue("data", JsonValueType.ARRAY);
+
+    if (profiler != null) {
+      // the rows are handed to the caller, so consumption is not measured
+      profiler.recordQuery("api: " + query, Util.currentTimeMillis() - startMillis, data.getSize(), -1);
+    }
+
+    return data;
+  }
+
+  /**
+   * streamQuery.  Execute a Vault API query, and return an iterator over its rows that requests the following
+   * pages (responseDetails.next_page) as the rows are consumed.  No request is made until the first hasNext().
+   * Params added with addParam() are sent with the query.  See VaultQueryIterator for the page size and row
+   * limit options, and for error handling.
+   *
+   * @param query - String - the query, without a PAGESIZE clause if setPageSize() is used
+   * @return VaultQueryIterator
+   */
+  public VaultQueryIterator streamQuery(String query) {
+
+    List<HttpParam> queryParams = VaultCollections.newList();
+    queryParams.addAll(this.params);
+
+    this.params.clear();  // set up for the next API
+
+    return new VaultQueryIterator(this.connection, query, queryParams, this.logger);
   }
 
   /**
@@ -435,6 +484,131 @@ public class VaultAPI {
     this.succeeded = true;
   }
 
+  /**
+   * initiateBulkObjectRecordUserAction - initiate a User Action on many records of an Object with the
+   *   "Initiate Object Action on Multiple Records" API, in chunks of BULK_ACTION_CHUNK_SIZE records.
+   *   Returns the outcome per record ID.  Once the Vault API burst limit is low, the remaining chunks are not
+   *   sent, and their records are reported as failed with API_LIMIT_EXCEEDED.  failed() is true if any record
+   *   failed.
+   *
+   * @param objectName - String.  Name of the Vault Object.
+   * @param recordIds - List<String>.
+   * @param actionName - String.  API name of the user action (see getObjectUserActionName).
+   * @return BulkActionResult
+   */
+  public BulkActionResult initiateBulkObjectRecordUserAction(String objectName, List<String> recordIds, String actionName) {
+
+    BulkActionResult result = new BulkActionResult();
+
+    String path = "/api/" + APIVersion + "/vobjects/" + objectName + "/actions/" + actionName;
+
+    HttpCallout httpCallout = new HttpCallout(this.connection);
+
+    for (int start = 0; start < recordIds.size(); start += BULK_ACTION_CHUNK_SIZE) {
+
+      if (start > 0 && HttpCallout.isBurstLimitLow()) {
+        this.addNotSent(result, recordIds.subList(start, recordIds.size()));
+        break;
+      }
+
+      List<String> chunk = recordIds.subList(start, Math.min(start + BULK_ACTION_CHUNK_SIZE, recordIds.size()));
+
+      List<HttpParam> chunkParams = VaultCollections.newList();
+      chunkParams.addAll(this.params);
+      chunkParams.add(new HttpParam("ids", Util.stringifyList(chunk, ",")));
+
+      HttpResult httpResult = httpCallout.requestJson(HttpMethod.POST, path, chunkParams, this.logger);
+      result.addCall();
+
+      if (httpResult.isError()) {
+        for (String recordId : chunk) {
+          result.addFailure(recordId, httpResult.getErrorType(), httpResult.getErrorMessage());
+        }
+        continue;
+      }
+
+      // one entry per record: {"responseStatus": "SUCCESS"|"FAILURE", "id": ..., "errors": [{"type", "message"}]}
+      Set<String> reported = VaultCollections.newSet();
+      JsonArray data = httpResult.getJsonObject().getValue("data", JsonValueType.ARRAY);
+      for (int i = 0; i < data.getSize(); i++) {
+        JsonObject recordResult = data.getValue(i, JsonValueType.OBJECT);
+        String recordId = recordResult.getValue("id", JsonValueType.STRING);
+        reported.add(recordId);
+        if ("SUCCESS".equals(recordResult.getValue("responseStatus", JsonValueType.STRING))) {
+          result.addSuccess(recordId);
+          continue;
+        }
+        String errorType = ErrorType.OPERATION_FAILED;
+        String errorMessage = "The action failed";
+        if (recordResult.contains("errors")) {
+          JsonArray errors = recordResult.getValue("errors", JsonValueType.ARRAY);
+          if (errors.getSize() > 0) {
+            JsonObject error = errors.getValue(0, JsonValueType.OBJECT);
+            errorType = error.getValue("type", JsonValueType.STRING);
+            errorMessage = error.getValue("message", JsonValueType.STRING);
+          }
+        }
+        result.addFailure(recordId, errorType, errorMessage);
+      }
+      for (String recordId : chunk) {
+        if (!reported.contains(recordId)) {
+          result.addFailure(recordId, ErrorType.OPERATION_FAILED, "No result was returned for the record");
+        }
+      }
+    }
+
+    this.params.clear();  // set up for the next API
+
+    this.succeeded = !result.hasFailures();
+    if (!this.succeeded) {
+      String firstFailedId = result.getFailedIds().get(0);
+      this.errorType = result.getErrorType(firstFailedId);
+      this.errorMessage = result.getFailedIds().size() + " record(s) failed: " + result.getErrorMessage(firstFailedId);
+    }
+
+    return result;
+  }
+
+  /**
+   * getJobStatus - Return the status of a Vault job with the "Retrieve Job Status" API, e.g. "QUEUED",
+   *   "RUNNING" or "SUCCESS".  Returns null, with failed() true, if the status could not be retrieved.
+   *
+   * @param jobId - String.  Job ID, e.g. from BulkActionResult.getJobIds().
+   * @return String
+   */
+  public String getJobStatus(String jobId) {
+
+    String path = "/api/" + APIVersion + "/services/jobs/" + jobId;
+
+    HttpCallout httpCallout = new HttpCallout(this.connection);
+
+    HttpResult httpResult = httpCallout.requestJson(HttpMethod.GET, path, this.logger);
+
+    if (httpResult.isError()) {
+      this.succeeded = false;
+      this.errorType = httpResult.getErrorType();
+      this.errorMessage = httpResult.getErrorMessage();
+      return null;
+    }
+
+    JsonObject data = httpResult.getJsonObject().getValue("data", JsonValueType.OBJECT);
+
+    this.succeeded = true;
+
+    return data.getValue("status", JsonValueType.STRING);
+  }
+
+  /**
+   * isJobPending - Return true if a job status (see getJobStatus) means the job has not finished yet.
+   *
+   * @param status - String
+   * @return boolean
+   */
+  public static boolean isJobPending(String status) {
+    return "SCHEDULED".equals(status) || "QUEUEING".equals(status) || "QUEUED".equals(status) ||
+      "RUNNING".equals(status);
+  }
+
   /**
    * getObjectUserActionName - Get the internal User Action name for an Object User Action based on its Label
    *
@@ -491,5 +665,58 @@ public class VaultAPI {
 
     return actionName;
   }
-}
 
+  // Resolve a document user action label to its name with "Retrieve User Actions".  Returns null, with
+  // failed() true, if not found.
+  private String lookupDocumentUserActionName(String docVersionId, String actionLabel) {
+
+    this.succeeded = true;
+
+    DocVersionIdParts docVersionIdParts = new DocVersionIdParts(docVersionId);
+    HttpResult httpResult;
+
+    StringBuilder path = new StringBuilder();
+    path
+      .append("/api/").append(APIVersion).append("/objects/documents/")
+      .append(docVersionIdParts.id)
+      .append("/versions/")
+      .append(docVersionIdParts.major)
+      .append("/")
+      .append(docVersionIdParts.minor)
+      .append("/lifecycle_actions");
+
+    HttpCallout httpCallout = new HttpCallout(this.connection);
+
+    httpResult = httpCallout.requestJson(HttpMethod.GET, path.toString(), this.logger);
+
+    if (httpResult.isError()) {
+      this.succeeded = false;
+      this.errorType = httpResult.getErrorType();
+      this.errorMessage = httpResult.getErrorMessage();
+      return null;
+    }
+
+    String actionName = null;
+
+    JsonArray lifecycleActions = httpResult.getJsonObject().getValue("lifecycle_actions__v", JsonValueType.ARRAY);
+
+    for (int i = 0; i < lifecycleActions.getSize(); i++) {
+      JsonObject action = lifecycleActions.getValue(i, JsonValueType.OBJECT);
+      String label = action.getValue("label__v", JsonValueType.STRING);
+      if (label.equals(actionLabel)) {
+        actionName = action.getValue("name__v", JsonValueType.STRING);
+        break;
+      }
+    }
+
+    if (actionName == null) {
+      this.succeeded = false;
+      this.errorType = ErrorType.OPERATION_FAILED;
+      this.errorMessage = "An error occurred accessing Vault API \"Retrieve User Actions\".  " +
+        "Unable to find action \"" + actionLabel + "\"";
+      return null;
+    }
+
+    return actionName;
+  }
+}
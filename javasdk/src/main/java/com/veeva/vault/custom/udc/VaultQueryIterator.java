@@ -0,0 +1,225 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.http.HttpMethod;
+import com.veeva.vault.sdk.api.json.JsonArray;
+import com.veeva.vault.sdk.api.json.JsonObject;
+import com.veeva.vault.sdk.api.json.JsonValueType;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the rows of a Vault API query (see VaultAPI.streamQuery), one response page at a time.
+ * The first page is requested on the first hasNext(); each following page is requested from the
+ * responseDetails.next_page link when the current page has been consumed.  Only one page of rows is held
+ * in memory at any time.
+ *
+ * Options, set before the first hasNext():
+ *   - setPageSize: the number of rows per page, appended to the query as a PAGESIZE clause.  Default is
+ *     Vault's page size.
+ *   - setMaxRows: stop after this many rows, without requesting further pages.  Default is no limit.
+ *
+ * Like VaultAPI, the iterator does not throw when a request fails: iteration ends, and failed() returns true.
+ *
+ * Example usage:
+ *
+ *    VaultQueryIterator rows = vaultAPI.streamQuery("select id, name__v from documents")
+ *      .setPageSize(1000)
+ *      .setMaxRows(10000);
+ *    while (rows.hasNext()) {
+ *      JsonObject row = rows.next();
+ *      ...
+ *    }
+ *    if (rows.failed()) {
+ *      ... rows.getErrorType(), rows.getErrorMessage() ...
+ *    }
+ */
+
+@UserDefinedClassInfo
+public class VaultQueryIterator implements Iterator<JsonObject> {
+
+    private String connection;
+    private String query;
+    private List<HttpParam> params;
+    private Logger logger;
+
+    private int pageSize;
+    private long maxRows;
+
+    private JsonArray page;
+    private int pagePosition;
+    private boolean pageRecorded;
+    private String nextPage;
+    private boolean started;
+    private int pageCount;
+    private long rowCount;
+    private long totalRows;
+
+    private String errorType;
+    private String errorMessage;
+
+    VaultQueryIterator(String connection, String query, List<HttpParam> params, Logger logger) {
+      this.connection = connection;
+      this.query = query;
+      this.params = params;
+      this.logger = logger;
+      this.pageSize = 0;
+      this.maxRows = 0;
+      this.page = null;
+      this.pagePosition = 0;
+      this.pageRecorded = false;
+      this.nextPage = null;
+      this.started = false;
+      this.pageCount = 0;
+      this.rowCount = 0;
+      this.totalRows = -1;
+      this.errorType = null;
+      this.errorMessage = null;
+    }
+
+    /**
+     * Request pages of this many rows.  The query must not contain its own PAGESIZE clause.
+     * @param pageSize - int
+     * @return this VaultQueryIterator
+     */
+    public VaultQueryIterator setPageSize(int pageSize) {
+      this.pageSize = pageSize;
+      return this;
+    }
+
+    /**
+     * Stop after this many rows.  0 means no limit.
+     * @param maxRows - long
+     * @return this VaultQueryIterator
+     */
+    public VaultQueryIterator setMaxRows(long maxRows) {
+      this.maxRows = maxRows;
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (this.maxRows > 0 && this.rowCount >= this.maxRows) {
+        this.recordPageConsumed();
+        return false;
+      }
+      while (this.page == null || this.pagePosition >= this.page.getSize()) {
+        if ((this.started && this.nextPage == null) || this.failed()) {
+          this.recordPageConsumed();
+          return false;
+        }
+        this.fetchNextPage();
+      }
+      return true;
+    }
+
+    @Override
+    public JsonObject next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      this.rowCount++;
+      return this.page.getValue(this.pagePosition++, JsonValueType.OBJECT);
+    }
+
+    public boolean failed() {
+      return this.errorType != null;
+    }
+
+    public String getErrorType() {
+      return this.errorType;
+    }
+
+    public String getErrorMessage() {
+      return this.errorMessage;
+    }
+
+    /**
+     * Return the number of pages fetched so far.
+     * @return int
+     */
+    public int getPageCount() {
+      return this.pageCount;
+    }
+
+    /**
+     * Return the number of rows consumed so far.
+     * @return long
+     */
+    public long getRowCount() {
+      return this.rowCount;
+    }
+
+    /**
+     * Return the total number of rows matched by the query (responseDetails.total), or -1 before the first
+     * page is fetched.
+     * @return long
+     */
+    public long getTotalRows() {
+      return this.totalRows;
+    }
+
+    private void fetchNextPage() {
+
+      this.recordPageConsumed();
+
+      HttpCallout httpCallout = new HttpCallout(this.connection).setIdempotent(true);  // queries are safe to repeat
+      HttpResult httpResult;
+      long startMillis = Util.currentTimeMillis();
+
+      if (!this.started) {
+        String pageQuery = this.pageSize > 0 ? this.query + " PAGESIZE " + this.pageSize : this.query;
+        this.params.add(new HttpParam("q", pageQuery));
+        httpResult = httpCallout.requestJson(
+          HttpMethod.POST, "/api/" + VaultAPI.APIVersion + "/query", this.params, this.logger
+        );
+        this.started = true;
+      } else {
+        httpResult = httpCallout.requestJson(HttpMethod.GET, this.nextPage, this.logger);
+      }
+
+      this.page = null;
+      this.pagePosition = 0;
+      this.nextPage = null;
+
+      if (httpResult.isError()) {
+        this.errorType = httpResult.getErrorType();
+        this.errorMessage = httpResult.getErrorMessage();
+        return;
+      }
+
+      JsonObject response = httpResult.getJsonObject();
+      this.page = response.getValue("data", JsonValueType.ARRAY);
+      this.pageRecorded = false;
+      this.pageCount++;
+
+      if (response.contains("responseDetails")) {
+        JsonObject responseDetails = response.getValue("responseDetails", JsonValueType.OBJECT);
+        if (responseDetails.contains("next_page")) {
+          this.nextPage = responseDetails.getValue("next_page", JsonValueType.STRING);
+        }
+        if (responseDetails.contains("total")) {
+          this.totalRows = responseDetails.getValue("total", JsonValueType.NUMBER).longValue();
+        }
+      }
+
+      QueryProfiler profiler = QueryProfiler.get();
+      if (profiler != null) {
+        profiler.recordQuery("api: " + this.query, Util.currentTimeMillis() - startMillis, this.page.getSize(), 0);
+      }
+    }
+
+    // Report the rows read from the current page to the QueryProfiler, if it is enabled, once per page.
+    private void recordPageConsumed() {
+      if (this.page == null || this.pageRecorded) {
+        return;
+      }
+      this.pageRecorded = true;
+      QueryProfiler profiler = QueryProfiler.get();
+      if (profiler != null) {
+        profiler.recordConsumed("api: " + this.query, this.pagePosition);
+      }
+    }
+}
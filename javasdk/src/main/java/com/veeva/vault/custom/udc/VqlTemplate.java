@@ -0,0 +1,239 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RollbackException;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A VQL query template with named parameters, e.g.:
+ *
+ *    String query = VqlTemplate.get("select id from application_role__v where api_name__v = :roleName")
+ *      .setString("roleName", roleName)
+ *      .render();
+ *
+ * A parameter is a ':' followed by a name, anywhere outside of a quoted literal.  Parameter values are
+ * typed, and are escaped and quoted as VQL requires:
+ *   - setString - a quoted, escaped string literal, e.g. 'O\'Brien'
+ *   - setNumber - an unquoted number
+ *   - setDate - a quoted date literal, e.g. '2025-02-03'
+ *   - setIdList - a parenthesized list of quoted, escaped strings for a 'contains' filter, e.g. ('a','b')
+ *   - setNumberList - a parenthesized list of numbers for a 'contains' filter, e.g. (1,2)
+ *
+ * get() parses a template once per request and caches it by its text, so template text should be a
+ * constant.  render() builds the query in a buffer that is reused by every render of the template, and
+ * clears the parameter values so the template is ready for the next use.  Every parameter must be set
+ * before render() is called.
+ */
+
+@UserDefinedClassInfo
+public class VqlTemplate {
+
+    // literals[i] precedes the parameter names[i]; the final literal follows the last parameter
+    private String[] literals;
+    private String[] names;
+    private String[] values;
+
+    private StringBuilder buffer;
+
+    VqlTemplate(String text) {
+
+      List<String> literalList = VaultCollections.newList();
+      List<String> nameList = VaultCollections.newList();
+
+      StringBuilder literal = new StringBuilder(text.length());
+      boolean inLiteral = false;
+      int i = 0;
+
+      while (i < text.length()) {
+        char c = text.charAt(i);
+        if (inLiteral) {
+          literal.append(c);
+          if (c == '\\' && i + 1 < text.length()) {
+            literal.append(text.charAt(++i));
+          } else if (c == '\'') {
+            inLiteral = false;
+          }
+          i++;
+        } else if (c == ':' && i + 1 < text.length() && isNameChar(text.charAt(i + 1))) {
+          int start = ++i;
+          while (i < text.length() && isNameChar(text.charAt(i))) {
+            i++;
+          }
+          literalList.add(literal.toString());
+          nameList.add(text.substring(start, i));
+          literal.setLength(0);
+        } else {
+          literal.append(c);
+          if (c == '\'') {
+            inLiteral = true;
+          }
+          i++;
+        }
+      }
+      literalList.add(literal.toString());
+
+      this.literals = literalList.toArray(new String[literalList.size()]);
+      this.names = nameList.toArray(new String[nameList.size()]);
+      this.values = new String[this.names.length];
+      this.buffer = new StringBuilder(text.length() + 100);
+    }
+
+    /**
+     * Return the parsed template for the template text.  The template is parsed the first time it is
+     * requested in the current request, and the parsed template is returned on subsequent calls.
+     * @param text - String.  The template text.
+     * @return VqlTemplate
+     */
+    public static VqlTemplate get(String text) {
+      return VqlTemplateCache.get().getTemplate(text);
+    }
+
+    /**
+     * Set a parameter to a quoted, escaped string literal.  A null value renders as null.
+     * @param name - String.  Parameter name, without the ':'.
+     * @param value - String.
+     * @return this template
+     */
+    public VqlTemplate setString(String name, String value) {
+      if (value == null) {
+        return this.set(name, "null");
+      }
+      StringBuilder sb = new StringBuilder(value.length() + 2);
+      appendQuoted(sb, value);
+      return this.set(name, sb.toString());
+    }
+
+    /**
+     * Set a parameter to an unquoted number.
+     * @param name - String.  Parameter name, without the ':'.
+     * @param value - BigDecimal, long or int.
+     * @return this template
+     */
+    public VqlTemplate setNumber(String name, BigDecimal value) {
+      return this.set(name, value == null ? "null" : value.toPlainString());
+    }
+    public VqlTemplate setNumber(String name, long value) {
+      return this.set(name, String.valueOf(value));
+    }
+
+    /**
+     * Set a parameter to a quoted date literal in the format 'yyyy-MM-dd'.
+     * @param name - String.  Parameter name, without the ':'.
+     * @param value - LocalDate.
+     * @return this template
+     */
+    public VqlTemplate setDate(String name, LocalDate value) {
+      return this.set(name, value == null ? "null" : "'" + value.toString() + "'");
+    }
+
+    /**
+     * Set a parameter to a 'contains' list of quoted, escaped strings, e.g. ('a','b').  The list is
+     * assumed to contain elements.
+     * @param name - String.  Parameter name, without the ':'.
+     * @param ids - Collection<String>.
+     * @return this template
+     */
+    public VqlTemplate setIdList(String name, Collection<String> ids) {
+      return this.set(name, renderIdList(ids));
+    }
+
+    // Render a 'contains' list of quoted, escaped strings, as setIdList() does; also used by ContainsQuery.
+    static String renderIdList(Collection<String> ids) {
+      StringBuilder sb = new StringBuilder(ids.size() * 20);
+      Iterator<String> iter = ids.iterator();
+      sb.append("(");
+      while (iter.hasNext()) {
+        appendQuoted(sb, iter.next());
+        if (iter.hasNext()) {
+          sb.append(",");
+        }
+      }
+      sb.append(")");
+      return sb.toString();
+    }
+
+    /**
+     * Set a parameter to a 'contains' list of unquoted numbers, e.g. (1,2).  The list is assumed to
+     * contain elements.
+     * @param name - String.  Parameter name, without the ':'.
+     * @param numbers - Collection<? extends Number>.
+     * @return this template
+     */
+    public VqlTemplate setNumberList(String name, Collection<? extends Number> numbers) {
+      StringBuilder sb = new StringBuilder(numbers.size() * 10);
+      Iterator<? extends Number> iter = numbers.iterator();
+      sb.append("(");
+      while (iter.hasNext()) {
+        Number number = iter.next();
+        sb.append(number instanceof BigDecimal ? ((BigDecimal) number).toPlainString() : number.toString());
+        if (iter.hasNext()) {
+          sb.append(",");
+        }
+      }
+      sb.append(")");
+      return this.set(name, sb.toString());
+    }
+
+    /**
+     * Return the query with all parameters replaced by their values, and clear the parameter values.
+     * @return String.  The vql query string.
+     */
+    public String render() {
+
+      this.buffer.setLength(0);
+
+      for (int i = 0; i < this.names.length; i++) {
+        if (this.values[i] == null) {
+          throw new RollbackException(
+            ErrorType.OPERATION_FAILED,
+            "VQL template parameter \":" + this.names[i] + "\" has not been set"
+          );
+        }
+        this.buffer.append(this.literals[i]).append(this.values[i]);
+        this.values[i] = null;
+      }
+      this.buffer.append(this.literals[this.names.length]);
+
+      return this.buffer.toString();
+    }
+
+    private VqlTemplate set(String name, String renderedValue) {
+      boolean found = false;
+      for (int i = 0; i < this.names.length; i++) {
+        if (this.names[i].equals(name)) {
+          this.values[i] = renderedValue;
+          found = true;
+        }
+      }
+      if (!found) {
+        throw new RollbackException(
+          ErrorType.OPERATION_FAILED,
+          "VQL template has no parameter \":" + name + "\""
+        );
+      }
+      return this;
+    }
+
+    // Append a VQL string literal: the value in single quotes, with quotes and backslashes escaped.
+    private static void appendQuoted(StringBuilder sb, String value) {
+      sb.append('\'');
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c == '\'' || c == '\\') {
+          sb.append('\\');
+        }
+        sb.append(c);
+      }
+      sb.append('\'');
+    }
+
+    private static boolean isNameChar(char c) {
+      return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,47 @@
+package com.veeva.vault.custom.udc;
+
+import com.veeva.vault.sdk.api.core.RequestContext;
+import com.veeva.vault.sdk.api.core.RequestContextValue;
+import com.veeva.vault.sdk.api.core.RequestContextValueType;
+import com.veeva.vault.sdk.api.core.UserDefinedClassInfo;
+import com.veeva.vault.sdk.api.core.VaultCollections;
+
+import java.util.Map;
+
+/**
+ * Holds the VQL templates parsed in the current request, keyed by template text.  The cache lives
+ * in the RequestContext.  See VqlTemplate.get().
+ */
+
+@UserDefinedClassInfo
+class VqlTemplateCache implements RequestContextValue {
+
+    private static final String CONTEXT_KEY = "VqlTemplate.templates";
+
+    private Map<String, VqlTemplate> templates;
+
+    private VqlTemplateCache() {
+      this.templates = VaultCollections.newMap();
+    }
+
+    static VqlTemplateCache get() {
+      VqlTemplateCache cache = RequestContext.get().getValue(
+        CONTEXT_KEY,
+        RequestContextValueType.forClass(VqlTemplateCache.class)
+      );
+      if (cache == null) {
+        cache = new VqlTemplateCache();
+        RequestContext.get().setValue(CONTEXT_KEY, cache);
+      }
+      return cache;
+    }
+
+    VqlTemplate getTemplate(String text) {
+      VqlTemplate template = this.templates.get(text);
+      if (template == null) {
+        template = new VqlTemplate(text);
+        this.templates.put(text, template);
+      }
+      return template;
+    }
+}